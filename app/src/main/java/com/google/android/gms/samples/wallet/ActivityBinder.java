@@ -0,0 +1,88 @@
+package com.google.android.gms.samples.wallet;
+
+import android.app.Activity;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Delivers results to the current instance of an Activity, on the main thread.
+ * <p>
+ * Only a weak reference to the Activity is kept, and receivers get the Activity as an argument
+ * instead of capturing it, so work still running does not hold on to a destroyed screen. Results
+ * arriving while no live instance is attached, between the destroy and the create of a
+ * configuration change, are held and delivered on {@link #attach}. After {@link #release()} they
+ * are dropped.
+ */
+final class ActivityBinder<A extends Activity> {
+    interface Receiver<A, T> {
+        void onResult(A activity, T result, Throwable error);
+    }
+
+    private WeakReference<A> mActivity = new WeakReference<>(null);
+    private final List<Runnable> mHeld = new ArrayList<>();
+    private boolean mReleased;
+
+    /**
+     * Call from {@link Activity#onCreate}. Delivers the results held while no instance was attached.
+     */
+    void attach(A activity) {
+        mActivity = new WeakReference<>(activity);
+        List<Runnable> held = new ArrayList<>(mHeld);
+        mHeld.clear();
+        for (Runnable delivery : held) {
+            delivery.run();
+        }
+    }
+
+    /**
+     * Call from {@link Activity#onDestroy} when the Activity is recreated.
+     */
+    void detach() {
+        mActivity.clear();
+    }
+
+    /**
+     * Call from {@link Activity#onDestroy} when the Activity is finishing.
+     */
+    void release() {
+        mReleased = true;
+        mActivity.clear();
+        mHeld.clear();
+    }
+
+    /**
+     * @return a completion action for a future, handing its outcome to {@code receiver} on the main
+     *     thread. Make {@code receiver} a static field or a static nested class.
+     */
+    <T> BiConsumer<T, Throwable> bind(final Receiver<? super A, ? super T> receiver) {
+        return new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(final T result, final Throwable error) {
+                MainThreadExecutor.INSTANCE.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(receiver, result, error);
+                    }
+                });
+            }
+        };
+    }
+
+    private <T> void deliver(final Receiver<? super A, ? super T> receiver, final T result, final Throwable error) {
+        if (mReleased) return;
+        A activity = mActivity.get();
+        if (activity == null || activity.isDestroyed()) {
+            mHeld.add(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(receiver, result, error);
+                }
+            });
+            return;
+        }
+        receiver.onResult(activity, result, error);
+    }
+}
@@ -17,6 +17,7 @@
 package com.google.android.gms.samples.wallet;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
@@ -24,11 +25,18 @@ import android.util.Log;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
+import android.widget.Toast;
 
-import com.google.android.gms.wallet.PaymentData;
-
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.text.ParseException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
 /**
  * Checkout implementation for the app
@@ -50,16 +58,103 @@ public class CheckoutActivity extends Activity {
    */
   private View mGooglePayButton;
 
+  private TextView mGooglePayStatusText;
+
   /**
-   * Arbitrarily-picked constant integer you define to track a request for payment data activity.
-   *
-   * @value #LOAD_PAYMENT_DATA_REQUEST_CODE
+   * The item on sale, looked up in the {@link ProductCatalog}.
    */
-  private static final int LOAD_PAYMENT_DATA_REQUEST_CODE = 991;
+  private static final String ITEM_SKU = "BIKE-SIMPLE";
 
-  private TextView mGooglePayStatusText;
+  private ItemInfo mBikeItem;
+
+  /**
+   * Backend endpoint that forwards payment tokens to the gateway, {@code submissionEndpoint} in
+   * payments.properties. Null when unset, then tokens are not submitted.
+   */
+  private static final String SUBMISSION_ENDPOINT = GeneratedPaymentConfig.SUBMISSION_ENDPOINT;
+
+  private static TokenSubmitter sTokenSubmitter;
+
+  /**
+   * Merchant, cards, auth methods and gateway used by this store, generated from
+   * src/main/payments/payments.properties with its requests already serialized.
+   */
+  static final PaymentConfig STORE_CONFIG = GeneratedPaymentConfig.CONFIG;
+
+  /**
+   * Gateways the store contracts with. Each checkout is tokenized for the fastest healthy one,
+   * judged by how its token submissions went. Null with direct tokenization, when checkouts use
+   * {@link #STORE_CONFIG} as it is.
+   */
+  static final GatewayRouter GATEWAYS = gatewayRouter(STORE_CONFIG);
+
+  /**
+   * Shared with {@link PaymentsPrewarm} so the client can be configured before the screen exists.
+   */
+  static final PaymentsPrewarm.Configuration PAYMENTS_CONFIGURATION = new PaymentsPrewarm.Configuration() {
+      @Override
+      public GooglePayments create(Context context) {
+          return new GooglePayments(context, PayUtils.TypeEnvironment.TEST).setConfig(STORE_CONFIG);
+      }
+  };
+
+  /**
+   * Survives configuration changes, so a payment sheet started by a previous instance reports to
+   * this one.
+   */
+  private Session mSession;
 
-  private ItemInfo mBikeItem = new ItemInfo("Simple Bike", "30.00", R.drawable.bike);
+  private static final class Session {
+      GooglePayments payments;
+      boolean prewarmed;
+      /** When the session's screen was created, for its time to button. 0 once recorded. */
+      long createdAt;
+      Cart cart;
+      final ActivityBinder<CheckoutActivity> binder = new ActivityBinder<>();
+      CompletableFuture<Boolean> readiness;
+      CompletableFuture<Boolean> confirmedReadiness;
+      CompletableFuture<TokenSubmitter.Submission> payment;
+      /** Gateway of the payment in progress, null with direct tokenization. */
+      String paymentGateway;
+  }
+
+  /**
+   * Saved while a payment is in progress, to submit its result for the right gateway when the
+   * process is restarted while the sheet is up.
+   */
+  private static final String STATE_PAYMENT_GATEWAY = "paymentGateway";
+
+  private static final ActivityBinder.Receiver<CheckoutActivity, Boolean> SHOW_GOOGLE_PAY =
+          new ActivityBinder.Receiver<CheckoutActivity, Boolean>() {
+      @Override
+      public void onResult(CheckoutActivity activity, Boolean ready, Throwable error) {
+          activity.setGooglePayAvailable(error == null && ready);
+      }
+  };
+
+  private static final ActivityBinder.Receiver<CheckoutActivity, Boolean> CONFIRM_GOOGLE_PAY =
+          new ActivityBinder.Receiver<CheckoutActivity, Boolean>() {
+      @Override
+      public void onResult(CheckoutActivity activity, Boolean confirmed, Throwable error) {
+          if (error != null || !confirmed) activity.setGooglePayAvailable(false);
+      }
+  };
+
+  private static final ActivityBinder.Receiver<CheckoutActivity, TokenSubmitter.Submission> PAYMENT_DONE =
+          new ActivityBinder.Receiver<CheckoutActivity, TokenSubmitter.Submission>() {
+      @Override
+      public void onResult(CheckoutActivity activity, TokenSubmitter.Submission submission, Throwable error) {
+          activity.mGooglePayButton.setClickable(true);
+          if (error == null) return;
+          Log.e("loadPaymentData", "Error: " + error.toString());
+          Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+          if (cause instanceof PaymentException
+                  && ((PaymentException) cause).getStatusCode() == TokenSubmitter.STATUS_QUEUE_FULL) {
+              // Authorized but not sent yet: tell the user rather than let them pay a second time.
+              Toast.makeText(activity, R.string.payment_submission_delayed, Toast.LENGTH_LONG).show();
+          }
+      }
+  };
 
   /**
    * Initialize the Google Pay API on creation of the activity
@@ -69,61 +164,114 @@ public class CheckoutActivity extends Activity {
   @Override
   protected void onCreate(Bundle savedInstanceState) {
       super.onCreate(savedInstanceState);
+      long createdAt = CheckoutMetrics.start();
       setContentView(R.layout.activity_checkout);
 
+      mBikeItem = findItem(ITEM_SKU);
       initItemUI();
 
       mGooglePayButton = findViewById(R.id.googlepay_button);
       mGooglePayStatusText = findViewById(R.id.googlepay_status);
 
-      mPaymentsClient = new GooglePayments(this, PayUtils.TypeEnvironment.TEST);
-      mPaymentsClient.addMerchant("TaxiAdminTest");
-      mPaymentsClient.addCard(PayUtils.Cards.MASTERCARD, PayUtils.Cards.VISA);
-      mPaymentsClient.addPayMethods(PayUtils.PayMethod.PAN_ONLY, PayUtils.PayMethod.CRYPTOGRAM_3DS);
-      mPaymentsClient.addParameter("gateway", "portmonecom");
-      mPaymentsClient.addParameter("gatewayMerchantId", "1185");
-
-      mPaymentsClient.getIsReadyToPayRequest(new GooglePayments.OnPaymentResult() {
-          @Override
-          public void onReadyToPay(boolean ready) {
-              setGooglePayAvailable(ready);
-          }
+      mSession = (Session) getLastNonConfigurationInstance();
+      if (mSession == null) {
+          mSession = startSession(createdAt);
+          if (savedInstanceState != null) mSession.paymentGateway = savedInstanceState.getString(STATE_PAYMENT_GATEWAY);
+      }
+      mPaymentsClient = mSession.payments;
+      mPaymentsClient.attach(this);
+      mSession.binder.attach(this);
+      mSession.readiness.whenComplete(mSession.binder.bind(SHOW_GOOGLE_PAY));
+      mSession.confirmedReadiness.whenComplete(mSession.binder.bind(CONFIRM_GOOGLE_PAY));
+      if (mSession.payment != null && !mSession.payment.isDone()) mGooglePayButton.setClickable(false);
 
+      mGooglePayButton.setOnClickListener( new View.OnClickListener() {
           @Override
-          public void onSuccess(PaymentData paymentData) {
-              handlePaymentSuccess(paymentData);
+          public void onClick(View view) {
+              GatewayRouter.Gateway gateway = GATEWAYS == null ? null : GATEWAYS.route();
+              submit(mPaymentsClient.pay(gateway, mSession.cart), gateway);
           }
+      });
+  }
 
-          @Override
-          public void onCancel() {
+  private void submit(CompletableFuture<PaymentResult> sheet, GatewayRouter.Gateway gateway) {
+      mGooglePayButton.setClickable(false);
+      mSession.paymentGateway = gateway == null ? null : gateway.getName();
+      mSession.payment = sheet.thenApplyAsync(new SubmitPayment(getApplicationContext(), gateway), mPaymentsClient.getExecutor());
+      mSession.payment.whenComplete(mSession.binder.bind(PAYMENT_DONE));
+  }
 
-          }
+  private Session startSession(long createdAt) {
+      Session session = new Session();
+      session.createdAt = createdAt;
+      session.payments = PaymentsPrewarm.take();
+      session.prewarmed = session.payments != null;
+      if (!session.prewarmed) session.payments = PAYMENTS_CONFIGURATION.create(this);
+      session.cart = new Cart(mBikeItem.getPrice().getCurrency())
+              .add(ITEM_SKU, mBikeItem.getName(), mBikeItem.getPrice(), 1);
+      getTokenSubmitter(this);
 
+      final GooglePayments payments = session.payments;
+      session.readiness = payments.readiness();
+      session.confirmedReadiness = session.readiness.thenCompose(new Function<Boolean, CompletionStage<Boolean>>() {
           @Override
-          public void onError(String message, int code) {
-
+          public CompletionStage<Boolean> apply(Boolean ready) {
+              if (ready && payments.getReadinessFallback() == PaymentFlow.ReadinessFallback.OPTIMISTIC) {
+                  return payments.confirmReadiness();
+              }
+              return CompletableFuture.completedFuture(ready);
           }
       });
+      return session;
+  }
 
-      mGooglePayButton.setOnClickListener( new View.OnClickListener() {
-          @Override
-          public void onClick(View view) {
-              mGooglePayButton.setClickable(false);
-              try {
-                  mPaymentsClient.getPaymentRequest(CheckoutActivity.this);
-              } catch (Exception e) {
-                  e.printStackTrace();
+  @Override
+  public Object onRetainNonConfigurationInstance() {
+      return mSession;
+  }
+
+  @Override
+  protected void onSaveInstanceState(Bundle outState) {
+      super.onSaveInstanceState(outState);
+      if (mSession.payment != null && !mSession.payment.isDone()) {
+          outState.putString(STATE_PAYMENT_GATEWAY, mSession.paymentGateway);
+      }
+  }
+
+  @Override
+  protected void onDestroy() {
+      mPaymentsClient.detach();
+      if (isChangingConfigurations()) {
+          mSession.binder.detach();
+      } else {
+          mSession.binder.release();
+          mSession.readiness.cancel(false);
+          mSession.confirmedReadiness.cancel(false);
+          // The payment is left to finish: once authorized, its token still has to be journaled
+          // and submitted. Releasing the binder only drops its delivery to this screen.
+          if (CheckoutMetrics.isEnabled()) {
+              for (Map.Entry<CheckoutMetrics.Stage, CheckoutMetrics.StageSnapshot> stage : CheckoutMetrics.snapshot().entrySet()) {
+                  Log.d("CheckoutMetrics", stage.getKey() + ": " + stage.getValue());
               }
           }
-      });
+      }
+      super.onDestroy();
   }
 
-
   private void setGooglePayAvailable(boolean available) {
+      if (mSession.createdAt != 0L) {
+          // Once per session, a screen recreated by a configuration change shows a known answer.
+          CheckoutMetrics.success(mSession.prewarmed
+                  ? CheckoutMetrics.Stage.TIME_TO_BUTTON_PREWARMED : CheckoutMetrics.Stage.TIME_TO_BUTTON_COLD,
+                  mSession.createdAt);
+          mSession.createdAt = 0L;
+      }
       if (available) {
           mGooglePayStatusText.setVisibility(View.GONE);
           mGooglePayButton.setVisibility(View.VISIBLE);
       } else {
+          mGooglePayButton.setVisibility(View.GONE);
+          mGooglePayStatusText.setVisibility(View.VISIBLE);
           mGooglePayStatusText.setText(R.string.googlepay_status_unavailable);
       }
   }
@@ -131,26 +279,114 @@ public class CheckoutActivity extends Activity {
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
-        if(mPaymentsClient.onActivityResult(requestCode, resultCode, data))
-            mGooglePayButton.setClickable(true);
+        if (requestCode != GooglePayments.LOAD_PAYMENT_DATA_REQUEST_CODE
+                || mPaymentsClient.onActivityResult(requestCode, resultCode, data)) {
+            return;
+        }
+        // The sheet outlived the process that showed it. Submit its result all the same, for the
+        // gateway saved with the state, rather than drop an authorized payment.
+        String gatewayName = mSession.paymentGateway;
+        GatewayRouter.Gateway gateway = GATEWAYS == null || gatewayName == null ? null : GATEWAYS.getGateway(gatewayName);
+        submit(mPaymentsClient.recoverPayment(resultCode, data, mSession.cart.getTotal()), gateway);
+    }
+
+
+  /**
+   * Extracts the token and queues it for the backend, off the main thread. Holds the application
+   * context only.
+   */
+  private static final class SubmitPayment implements Function<PaymentResult, TokenSubmitter.Submission> {
+    private final Context mContext;
+    private final GatewayRouter.Gateway mGateway;
+
+    /**
+     * @param gateway the gateway the checkout was tokenized for, null with direct tokenization.
+     */
+    SubmitPayment(Context applicationContext, GatewayRouter.Gateway gateway) {
+      mContext = applicationContext;
+      mGateway = gateway;
     }
 
+    /**
+     * @return the queued submission, null when the sheet was canceled.
+     * @throws CompletionException with a {@link PaymentException} when the submission was refused.
+     */
+    @Override
+    public TokenSubmitter.Submission apply(PaymentResult result) {
+      if (result.isCanceled()) return null;
+      PaymentToken token;
+      try {
+        token = PaymentFlow.parseToken(result);
+      } catch (ParseException e) {
+        throw new CompletionException(e);
+      }
+      // A directly tokenized payment names no gateway, the backend decrypts it itself.
+      TokenSubmitter.Submission submission = new TokenSubmitter.Submission(
+              mGateway == null ? "" : mGateway.getName(), mGateway == null ? "" : mGateway.getMerchantId(),
+              token.getToken(), result.getPrice());
+      TokenSubmitter submitter = getTokenSubmitter(mContext);
+      if (submitter == null) {
+        Log.w("SubmitPayment", "No submissionEndpoint in payments.properties, payment " + submission.getId() + " not sent");
+      } else if (!submitter.submit(submission)) {
+        throw new CompletionException(new PaymentException(TokenSubmitter.STATUS_QUEUE_FULL,
+                "Submission queue is full, payment " + submission.getId() + " is sent on the next start"));
+      }
+      return submission;
+    }
+  }
+
+  /**
+   * The submitter replays journaled submissions left over from a previous run as soon as it is
+   * created, so it is created with the screen rather than on the first payment.
+   *
+   * @return the submitter, or null when no submission endpoint is configured.
+   */
+  private static synchronized TokenSubmitter getTokenSubmitter(Context context) {
+    if (sTokenSubmitter == null && SUBMISSION_ENDPOINT != null) {
+      File journal = new File(context.getFilesDir(), "payments.journal");
+      try {
+        sTokenSubmitter = new TokenSubmitter(new URL(SUBMISSION_ENDPOINT), 64, 1, journal, new TokenSubmitter.Listener() {
+          @Override
+          public void onSubmitted(TokenSubmitter.Submission submission, long postMicros) {
+            Log.d("TokenSubmitter", "Payment " + submission.getId() + " submitted");
+            if (GATEWAYS != null) GATEWAYS.recordSuccess(submission.getGateway(), postMicros);
+          }
 
-  private void handlePaymentSuccess(PaymentData paymentData) {
-    String paymentInformation = paymentData.toJson();
+          @Override
+          public void onFailed(TokenSubmitter.Submission submission, Exception error, long postMicros) {
+            Log.e("TokenSubmitter", "Payment " + submission.getId() + " failed: " + error.toString());
+            if (GATEWAYS != null) GATEWAYS.recordFailure(submission.getGateway(), postMicros);
+          }
+        });
+      } catch (MalformedURLException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return sTokenSubmitter;
+  }
 
-    // Token will be null if PaymentDataRequest was not constructed using fromJson(String).
-    if (paymentInformation == null) {
-      return;
+  /**
+   * @return a router over the gateways of payments.properties, or null when the config tokenizes
+   *     directly.
+   */
+  private static GatewayRouter gatewayRouter(PaymentConfig config) {
+    if (config.getTokenization() != PayUtils.Tokenization.PAYMENT_GATEWAY) return null;
+    GatewayRouter.Builder router = new GatewayRouter.Builder(config);
+    for (String[] gateway : GeneratedPaymentConfig.GATEWAYS) {
+      router.addGateway(gateway[0], gateway[1]);
     }
-    JSONObject paymentMethodData;
+    return router.build();
+  }
 
+  private ItemInfo findItem(String sku) {
     try {
-      paymentMethodData = new JSONObject(paymentInformation).getJSONObject("paymentMethodData");
-      Log.d("GooglePaymentToken", paymentMethodData.getJSONObject("tokenizationData").getString("token"));
-    } catch (JSONException e) {
-      Log.e("handlePaymentSuccess", "Error: " + e.toString());
+      ItemInfo item = ProductCatalog.get(this).find(sku);
+      if (item != null) return item;
+      Log.e("ProductCatalog", "No item " + sku + " in the catalog");
+    } catch (IOException e) {
+      Log.e("ProductCatalog", "Error: " + e.toString());
     }
+    return new ItemInfo("Simple Bike", Money.ofMicros(30000000L, PayUtils.TypeCurrency.USD), R.drawable.bike);
   }
 
   private void initItemUI() {
@@ -159,7 +395,7 @@ public class CheckoutActivity extends Activity {
     TextView itemPrice = findViewById(R.id.text_item_price);
 
     itemName.setText(mBikeItem.getName());
-    itemImage.setImageResource(mBikeItem.getImageResourceId());
-    itemPrice.setText(mBikeItem.getPrice());
+    ImageLoader.load(itemImage, mBikeItem.getImageResourceId());
+    itemPrice.setText(mBikeItem.getPrice().toString());
   }
 }
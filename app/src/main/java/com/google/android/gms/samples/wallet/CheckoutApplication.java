@@ -0,0 +1,23 @@
+package com.google.android.gms.samples.wallet;
+
+import android.app.Application;
+
+import java.io.File;
+
+/**
+ * Starts warming up the payments stack as soon as the process is created, when
+ * {@code prewarm=true} is set in payments.properties. Checkout metrics are
+ * collected in debug builds; every build records checkout stage events to
+ * {@code files/checkout-events.bin}, for {@code CheckoutEventDecoder} in payments-tools.
+ */
+public class CheckoutApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        CheckoutMetrics.setEnabled(BuildConfig.DEBUG);
+        // Keeps up to 4 files of 256 KiB, about 43,000 events.
+        CheckoutMetrics.setEventLog(new CheckoutEventLog(
+                new File(getFilesDir(), "checkout-events.bin"), 1024, 256 * 1024, 4, 2000));
+        if (GeneratedPaymentConfig.PREWARM) PaymentsPrewarm.start(this, CheckoutActivity.PAYMENTS_CONFIGURATION);
+    }
+}
@@ -0,0 +1,158 @@
+package com.google.android.gms.samples.wallet;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.common.api.ApiException;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.wallet.AutoResolveHelper;
+import com.google.android.gms.wallet.IsReadyToPayRequest;
+import com.google.android.gms.wallet.PaymentData;
+import com.google.android.gms.wallet.PaymentDataRequest;
+import com.google.android.gms.wallet.PaymentsClient;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link WalletClient} backed by the Play services PaymentsClient.
+ * <p>
+ * The payment sheet is resolved against the attached Activity, which has to forward its
+ * {@code onActivityResult} here. Every sheet uses {@link #LOAD_PAYMENT_DATA_REQUEST_CODE}, and the
+ * callback waiting for it is kept per process rather than per client: only one sheet is up at a
+ * time, and its result reaches the waiting callback through whichever client the current Activity
+ * forwards it to.
+ */
+class GmsWalletClient implements WalletClient {
+    /**
+     * Request code of every payment sheet.
+     */
+    static final int LOAD_PAYMENT_DATA_REQUEST_CODE = 991;
+
+    private static final Object sLock = new Object();
+    private static Callback<String> sPendingPayment;
+
+    private final PaymentsClient mPaymentsClient;
+    private WeakReference<Activity> mActivity = new WeakReference<>(null);
+
+    GmsWalletClient(Context context, PayUtils.TypeEnvironment environment) {
+        mPaymentsClient = PaymentsClientPool.get(context, environment);
+    }
+
+    void attach(Activity activity) {
+        mActivity = new WeakReference<>(activity);
+    }
+
+    void detach() {
+        mActivity.clear();
+    }
+
+    /**
+     * @return false when the attached Activity cannot show the payment sheet.
+     */
+    boolean isAttached() {
+        Activity activity = mActivity.get();
+        return activity != null && !activity.isFinishing() && !activity.isDestroyed();
+    }
+
+    @Override
+    public void isReadyToPay(String request, final Callback<Boolean> callback) {
+        long started = CheckoutMetrics.start();
+        IsReadyToPayRequest readyToPayRequest = IsReadyToPayRequest.fromJson(request);
+        CheckoutMetrics.success(CheckoutMetrics.Stage.READY_REQUEST_PARSE, started);
+        mPaymentsClient.isReadyToPay(readyToPayRequest)
+                .addOnCompleteListener(new OnCompleteListener<Boolean>() {
+                    @Override
+                    public void onComplete(@NonNull Task<Boolean> task) {
+                        if (task.isSuccessful()) {
+                            callback.onResult(Boolean.TRUE.equals(task.getResult()));
+                        } else {
+                            Exception e = task.getException();
+                            int statusCode = e instanceof ApiException ? ((ApiException) e).getStatusCode() : STATUS_UNKNOWN;
+                            callback.onFailure(statusCode, e != null ? e.toString() : "isReadyToPay failed");
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public void loadPaymentData(String request, Callback<String> callback) {
+        Activity activity = mActivity.get();
+        if (!isAttached()) {
+            callback.onFailure(STATUS_UNKNOWN, "Activity is not attached!");
+            return;
+        }
+        long started = CheckoutMetrics.start();
+        PaymentDataRequest paymentDataRequest = PaymentDataRequest.fromJson(request);
+        CheckoutMetrics.success(CheckoutMetrics.Stage.PAYMENT_REQUEST_PARSE, started);
+        Callback<String> replaced;
+        synchronized (sLock) {
+            replaced = sPendingPayment;
+            sPendingPayment = callback;
+        }
+        if (replaced != null) replaced.onFailure(STATUS_UNKNOWN, "Replaced by a newer payment sheet");
+        Task<PaymentData> task = mPaymentsClient.loadPaymentData(paymentDataRequest);
+        AutoResolveHelper.resolveTask(task, activity, LOAD_PAYMENT_DATA_REQUEST_CODE);
+    }
+
+    /**
+     * Hands the result of the payment sheet to the callback waiting for it, started by this client
+     * or by any other in the process. Unpacking the PaymentData and the callback run on
+     * {@code executor}, so the main thread only takes the callback.
+     *
+     * @return false when {@code requestCode} is not {@link #LOAD_PAYMENT_DATA_REQUEST_CODE}, or no
+     *     callback is waiting because the process was restarted while the sheet was up. Then the
+     *     result is left to {@link #deliver}.
+     */
+    boolean onActivityResult(int requestCode, final int resultCode, final Intent data, Executor executor) {
+        if (requestCode != LOAD_PAYMENT_DATA_REQUEST_CODE) return false;
+        final Callback<String> callback;
+        synchronized (sLock) {
+            callback = sPendingPayment;
+            sPendingPayment = null;
+        }
+        if (callback == null) return false;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deliver(resultCode, data, callback);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Unpacks a payment sheet result into the serialized PaymentData, or a failure.
+     */
+    static void deliver(int resultCode, Intent data, Callback<String> callback) {
+        switch (resultCode) {
+            case Activity.RESULT_OK:
+                PaymentData paymentData = PaymentData.getFromIntent(data);
+                String json = paymentData != null ? paymentData.toJson() : null;
+                if (json != null) {
+                    callback.onResult(json);
+                } else {
+                    callback.onFailure(STATUS_UNKNOWN, "Payment data is empty.");
+                }
+                break;
+            case Activity.RESULT_CANCELED:
+                callback.onFailure(STATUS_CANCELED, null);
+                break;
+            case AutoResolveHelper.RESULT_ERROR:
+            default:
+                String message = "Result status is Error.";
+                Status status = AutoResolveHelper.getStatusFromIntent(data);
+                if (status != null) {
+                    if (status.getStatusMessage() != null) message = status.getStatusMessage();
+                    callback.onFailure(status.getStatusCode(), message);
+                } else {
+                    callback.onFailure(STATUS_UNKNOWN, message);
+                }
+                break;
+        }
+    }
+}
@@ -1,216 +1,219 @@
 package com.google.android.gms.samples.wallet;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
-import android.support.annotation.NonNull;
 
-import com.google.android.gms.common.api.Status;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
-import com.google.android.gms.wallet.AutoResolveHelper;
-import com.google.android.gms.wallet.IsReadyToPayRequest;
-import com.google.android.gms.wallet.PaymentData;
-import com.google.android.gms.wallet.PaymentDataRequest;
-import com.google.android.gms.wallet.PaymentsClient;
-import com.google.android.gms.wallet.Wallet;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * The {@link PaymentFlow} over Play services, with the payment sheet shown from the main thread
+ * and the readiness deadline timed by its Handler.
+ *
  * @author Kisarinov Konstantin on 30.04.19.
  */
 public class GooglePayments extends PayUtils {
 
-    interface OnPaymentResult{
-        void onReadyToPay(boolean ready);
-        void onSuccess(PaymentData paymentData);
-        void onCancel();
-        void onError(String message, int code);
-    }
+    public static final long DEFAULT_READINESS_DEADLINE_MILLIS = PaymentFlow.DEFAULT_READINESS_DEADLINE_MILLIS;
 
-    private OnPaymentResult mOnPaymentResult;
+    /**
+     * Request code the payment sheet reports back with in {@link Activity#onActivityResult}.
+     */
+    public static final int LOAD_PAYMENT_DATA_REQUEST_CODE = GmsWalletClient.LOAD_PAYMENT_DATA_REQUEST_CODE;
 
-    private GPayParams mGPayParams = new GPayParams();
-    private PaymentsClient mPaymentsClient;
-    private static final int LOAD_PAYMENT_DATA_REQUEST_CODE = 248;
+    private volatile Money mTotalPrice;
+    private final GmsWalletClient mWalletClient;
+    private final PaymentFlow mFlow;
 
-    public GooglePayments(Activity activity, TypeEnvironment environment){
-        Wallet.WalletOptions options = new Wallet.WalletOptions.Builder()
-                .setEnvironment(environment.getEnvironment())
-                .build();
-        mPaymentsClient = Wallet.getPaymentsClient(activity, options);
+    public GooglePayments(Context context, TypeEnvironment environment){
+        long started = CheckoutMetrics.start();
+        mWalletClient = new GmsWalletClient(context, environment);
+        CheckoutMetrics.success(CheckoutMetrics.Stage.CLIENT_CREATE, started);
+        mFlow = new PaymentFlow(mWalletClient, ReadinessCache.getInstance(environment),
+                MainThreadExecutor.INSTANCE, MainThreadExecutor.INSTANCE);
+        if (context instanceof Activity) attach((Activity) context);
     }
 
-    public GooglePayments addMerchant(String name){
-        mGPayParams.addMerchant(name);
-        return this;
+    /**
+     * Binds the Activity that payment sheets are resolved against. Only a weak reference is kept.
+     */
+    public void attach(Activity activity){
+        mWalletClient.attach(activity);
     }
 
-    public GooglePayments addParameter(String name, String value){
-        mGPayParams.addParameter(name, value);
-        return this;
+    /**
+     * Releases the bound Activity, call it from {@link Activity#onDestroy()}.
+     */
+    public void detach(){
+        mWalletClient.detach();
     }
 
-    public GooglePayments addCard(Cards... card){
-        mGPayParams.addCard(card);
+    /**
+     * Publishes a complete configuration snapshot at once.
+     */
+    public GooglePayments setConfig(PaymentConfig config){
+        mFlow.setConfig(config);
         return this;
     }
 
-    public GooglePayments addPayMethods(PayMethod... methods){
-        mGPayParams.addPayMethod(methods);
-        return this;
+    public PaymentConfig getConfig(){
+        return mFlow.getConfig();
     }
 
-    public GooglePayments setTotalPrice(String val, TypeCurrency currency){
-        mGPayParams.setTotalPrice(val, currency);
-        return this;
+    public synchronized GooglePayments addMerchant(String name){
+        return setConfig(getConfig().toBuilder().setMerchantName(name).build());
     }
 
-    private JSONObject getBaseRequest() throws JSONException {
-        return new JSONObject().put("apiVersion", 2).put("apiVersionMinor", 0);
+    public synchronized GooglePayments addParameter(String name, String value){
+        return setConfig(getConfig().toBuilder().addParameter(name, value).build());
     }
 
-    private JSONObject getGatewayTokenizationSpecification() throws JSONException {
-        JSONObject addGateway = new JSONObject();
-        for(String key : mGPayParams.$tokenParameters.keySet()){
-            String val = mGPayParams.$tokenParameters.get(key);
-            if(val!=null) addGateway.put(key, val);
-        }
-        return new JSONObject().put("type", "PAYMENT_GATEWAY").put("parameters", addGateway);
+    public synchronized GooglePayments addCard(Cards... card){
+        return setConfig(getConfig().toBuilder().addCards(card).build());
     }
 
-    private JSONArray getAllowedCardNetworks() {
-        JSONArray allowed_cards = new JSONArray();
-        for(Cards cards : mGPayParams.$cards){
-            allowed_cards.put(cards.getCardNetwork());
-        }
-        return allowed_cards;
+    public synchronized GooglePayments addPayMethods(PayMethod... methods){
+        return setConfig(getConfig().toBuilder().addPayMethods(methods).build());
     }
 
-    private JSONArray getAllowedCardAuthMethods() {
-        JSONArray allowed_pay_methods = new JSONArray();
-        for(PayMethod method : mGPayParams.$methods){
-            allowed_pay_methods.put(method.getPayMethod());
-        }
-        return allowed_pay_methods;
+    /**
+     * How long a successful readiness check is reused for this configuration.
+     */
+    public GooglePayments setReadinessTtl(long duration, TimeUnit unit){
+        mFlow.setReadinessTtl(unit.toMillis(duration));
+        return this;
     }
 
-    private JSONObject getBaseCardPaymentMethod() throws JSONException {
-        JSONObject cardPaymentMethod = new JSONObject();
-        cardPaymentMethod.put("type", "CARD");
-
-        JSONObject parameters = new JSONObject();
-        parameters.put("allowedAuthMethods", getAllowedCardAuthMethods());
-        parameters.put("allowedCardNetworks", getAllowedCardNetworks());
-        cardPaymentMethod.put("parameters", parameters);
+    /**
+     * Drops the cached readiness result, so the next check goes to Play services again.
+     */
+    public void invalidateReadiness(){
+        mFlow.invalidateReadiness();
+    }
 
-        return cardPaymentMethod;
+    /**
+     * Upper bound on {@link #readiness()}. When it is exceeded the answer comes from the
+     * {@link PaymentFlow.ReadinessFallback} and the timeout is recorded. Zero waits indefinitely.
+     */
+    public GooglePayments setReadinessDeadline(long duration, TimeUnit unit){
+        mFlow.setReadinessDeadline(unit.toMillis(duration));
+        return this;
     }
 
-    private JSONObject getCardPaymentMethod() throws JSONException {
-        JSONObject cardPaymentMethod = getBaseCardPaymentMethod();
-        cardPaymentMethod.put("tokenizationSpecification", getGatewayTokenizationSpecification());
-        return cardPaymentMethod;
+    public GooglePayments setReadinessFallback(PaymentFlow.ReadinessFallback fallback){
+        mFlow.setReadinessFallback(fallback);
+        return this;
     }
 
-    private JSONObject getTransactionInfo() throws JSONException {
-        JSONObject transactionInfo = new JSONObject();
-        transactionInfo.put("totalPrice", mGPayParams.$price);
-        transactionInfo.put("totalPriceStatus", "FINAL");
-        transactionInfo.put("currencyCode", mGPayParams.$currency);
-        return transactionInfo;
+    public PaymentFlow.ReadinessFallback getReadinessFallback(){
+        return mFlow.getReadinessFallback();
     }
 
-    private JSONObject getMerchantInfo() throws JSONException {
-        return new JSONObject().put("merchantName", mGPayParams.$merchantName);
+    /**
+     * Executor requests are serialized on before the payment sheet is shown, and payment sheet
+     * results are unpacked on.
+     */
+    public GooglePayments setExecutor(Executor executor){
+        mFlow.setExecutor(executor);
+        return this;
     }
 
-    private Optional<JSONObject> getPaymentDataRequest() {
-        try {
-            JSONObject paymentDataRequest = getBaseRequest();
-            paymentDataRequest.put("allowedPaymentMethods", new JSONArray().put(getCardPaymentMethod()));
-            paymentDataRequest.put("transactionInfo", getTransactionInfo());
-            paymentDataRequest.put("merchantInfo", getMerchantInfo());
-            paymentDataRequest.put("shippingAddressRequired", false);
+    public Executor getExecutor(){
+        return mFlow.getExecutor();
+    }
 
-            JSONObject shippingAddressParameters = new JSONObject().put("phoneNumberRequired", false);
+    public GooglePayments setTotalPrice(Money price){
+        mTotalPrice = price;
+        return this;
+    }
 
-            paymentDataRequest.put("shippingAddressParameters", shippingAddressParameters);
-            return Optional.of(paymentDataRequest);
-        } catch (JSONException e) {
-            return Optional.empty();
-        }
+    /**
+     * Serializes the requests and starts the readiness check ahead of time. Safe to call off the
+     * main thread before the client is handed over to an Activity.
+     */
+    public void prewarm(){
+        mFlow.prewarm();
     }
 
-    private Optional<JSONObject> isReadyToPayRequest() {
-        try {
-            JSONObject isReadyToPayRequest = getBaseRequest();
-            isReadyToPayRequest.put("allowedPaymentMethods", new JSONArray().put(getBaseCardPaymentMethod()));
-            return Optional.of(isReadyToPayRequest);
-        } catch (JSONException e) {
-            return Optional.empty();
-        }
+    /**
+     * @see PaymentFlow#readiness()
+     */
+    public CompletableFuture<Boolean> readiness(){
+        return mFlow.readiness();
     }
 
-    public void getIsReadyToPayRequest(final OnPaymentResult listener){
-        this.mOnPaymentResult = listener;
-        if(mGPayParams.isEmpty()) mOnPaymentResult.onError("Payment info not found!", -1);
-        final Optional<JSONObject> isReadyToPayJson = isReadyToPayRequest();
-        if (!isReadyToPayJson.isPresent()) return;
+    /**
+     * @see PaymentFlow#confirmReadiness()
+     */
+    public CompletableFuture<Boolean> confirmReadiness(){
+        return mFlow.confirmReadiness();
+    }
 
-        IsReadyToPayRequest request = IsReadyToPayRequest.fromJson(isReadyToPayJson.get().toString());
-        if (request == null || mPaymentsClient==null) return;
+    /**
+     * Shows the payment sheet for the total price.
+     */
+    public CompletableFuture<PaymentResult> pay(){
+        Money price = mTotalPrice;
+        if(price == null) {
+            CompletableFuture<PaymentResult> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new PaymentException(WalletClient.STATUS_UNKNOWN, "Payment info not found!"));
+            return failed;
+        }
+        return pay(CompletableFuture.completedFuture(price));
+    }
 
-        Task<Boolean> task = mPaymentsClient.isReadyToPay(request);
-        task.addOnCompleteListener(new OnCompleteListener<Boolean>() {
-            @Override
-            public void onComplete(@NonNull Task<Boolean> task) {
-                if(mOnPaymentResult!=null) mOnPaymentResult.onReadyToPay(task.isSuccessful());
-            }
-        });
+    /**
+     * @see PaymentFlow#pay(CompletionStage)
+     */
+    public CompletableFuture<PaymentResult> pay(CompletionStage<Money> price){
+        return mFlow.pay(price);
     }
 
-    public void getPaymentRequest(Activity activity) throws Exception{
-        if(mGPayParams.isEmpty()) throw new Exception("Payment info not found!");
-        Optional<JSONObject> paymentDataRequestJson = getPaymentDataRequest();
-        if (!paymentDataRequestJson.isPresent()) return;
-        PaymentDataRequest request = PaymentDataRequest.fromJson(paymentDataRequestJson.get().toString());
-        if (request!= null && mPaymentsClient!=null) {
-            Task<PaymentData> task = mPaymentsClient.loadPaymentData(request);
-            AutoResolveHelper.resolveTask(task, activity, LOAD_PAYMENT_DATA_REQUEST_CODE);
-        }
+    /**
+     * Shows the payment sheet for the cart with its line items. The cart is read on the calling
+     * thread, the request is serialized on the executor.
+     */
+    public CompletableFuture<PaymentResult> pay(Cart cart){
+        return mFlow.pay(null, cart);
     }
 
+    /**
+     * @see PaymentFlow#pay(GatewayRouter.Gateway, Cart)
+     */
+    public CompletableFuture<PaymentResult> pay(GatewayRouter.Gateway gateway, Cart cart){
+        return mFlow.pay(gateway, cart);
+    }
 
+    /**
+     * Forward {@link Activity#onActivityResult} here. Returns right away, the result is processed
+     * on the executor and completes the {@link #pay} call waiting for it, whichever client started
+     * it.
+     *
+     * @return false when it is not a payment sheet result, or when no pay() call is waiting for it
+     *     because the process was restarted while the sheet was up. Pass the latter to
+     *     {@link #recoverPayment}.
+     */
     public boolean onActivityResult(int requestCode, int resultCode, Intent data) {
-        boolean check = requestCode == LOAD_PAYMENT_DATA_REQUEST_CODE && mOnPaymentResult!=null;
-        if (check) {
-            switch (resultCode) {
-                case Activity.RESULT_OK:
-                    PaymentData paymentData = PaymentData.getFromIntent(data);
-                    mOnPaymentResult.onSuccess(paymentData);
-                    break;
-                case Activity.RESULT_CANCELED:
-                    mOnPaymentResult.onCancel();
-                    break;
-                case AutoResolveHelper.RESULT_ERROR:
-                    String message = "Result status is Error.";
-                    Status status = AutoResolveHelper.getStatusFromIntent(data);
-                    if(status!=null){
-                        message = status.getStatusMessage()!=null ? status.getStatusMessage() : message;
-                        mOnPaymentResult.onError(message, status.getStatusCode());
-                    }else{
-                        mOnPaymentResult.onError(message, -1);
-                    }
-                    break;
+        return mWalletClient.onActivityResult(requestCode, resultCode, data, getExecutor());
+    }
+
+    /**
+     * The result of a payment sheet whose pay() call did not survive, unpacked on the executor as
+     * pay() would have.
+     *
+     * @param price the amount the sheet was shown for, as far as the caller knows it.
+     */
+    public CompletableFuture<PaymentResult> recoverPayment(final int resultCode, final Intent data, Money price) {
+        final PaymentFlow.Sheet sheet = new PaymentFlow.Sheet(price, 0L);
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                GmsWalletClient.deliver(resultCode, data, sheet);
             }
-        }
-        return check;
+        });
+        return sheet;
     }
-
-
 }
@@ -0,0 +1,117 @@
+package com.google.android.gms.samples.wallet;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Process;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads drawable resources into ImageViews off the main thread.
+ * <p>
+ * Images are decoded downsampled to the size of the view and kept in a process-wide LRU cache
+ * bounded to an eighth of the heap, so a recreated screen gets its bitmaps back without decoding.
+ * A view that was given another image while its decode was running is left alone.
+ */
+final class ImageLoader {
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "ImageLoader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final LruCache<String, Bitmap> sCache =
+            new LruCache<String, Bitmap>((int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE)) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getAllocationByteCount();
+        }
+    };
+
+    private ImageLoader() {}
+
+    /**
+     * Shows {@code resId} in {@code view}, from the cache right away or once it is decoded. Call it
+     * on the main thread.
+     */
+    static void load(final ImageView view, final int resId) {
+        view.setTag(resId);
+        if (view.getWidth() == 0) {
+            // Not laid out yet: ask again once it is, so the decode can target the real size.
+            view.setImageDrawable(null);
+            view.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isBound(view, resId)) load(view, resId, view.getWidth(), view.getHeight());
+                }
+            });
+            return;
+        }
+        load(view, resId, view.getWidth(), view.getHeight());
+    }
+
+    private static void load(final ImageView view, final int resId, int width, int height) {
+        final Resources resources = view.getResources();
+        if (width == 0) width = resources.getDisplayMetrics().widthPixels;
+        final int targetWidth = width;
+        final int targetHeight = height;
+        final String key = resId + ":" + targetWidth + "x" + targetHeight;
+        Bitmap cached = sCache.get(key);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+        view.setImageDrawable(null);
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = decode(resources, resId, targetWidth, targetHeight);
+                if (bitmap == null) return;
+                sCache.put(key, bitmap);
+                MainThreadExecutor.INSTANCE.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isBound(view, resId)) view.setImageBitmap(bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    private static boolean isBound(ImageView view, int resId) {
+        Object tag = view.getTag();
+        return tag instanceof Integer && (Integer) tag == resId;
+    }
+
+    /**
+     * Decodes at the largest power-of-two reduction that still covers the target size. A target
+     * dimension of 0 is unconstrained.
+     */
+    private static Bitmap decode(Resources resources, int resId, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+        int sampleSize = 1;
+        while ((targetWidth > 0 && options.outWidth / (sampleSize * 2) >= targetWidth)
+                && (targetHeight <= 0 || options.outHeight / (sampleSize * 2) >= targetHeight)) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeResource(resources, resId, options);
+    }
+}
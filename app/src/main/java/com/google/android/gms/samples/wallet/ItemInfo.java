@@ -17,32 +17,46 @@
 package com.google.android.gms.samples.wallet;
 
 /**
- * Used for storing the (hard coded) info about the item we're selling.
+ * Used for storing the info about the item we're selling.
  * <p>
- * This POJO class is used only for example purposes - you don't need need it in your code.
+ * Items from the {@link ProductCatalog} are flyweights: they hold their position in the mapped
+ * catalog and read the name, price and image from it when first asked.
  */
 public class ItemInfo {
-    private final String name;
-    private final int imageResourceId;
+    private final ProductCatalog catalog;
+    private final int index;
+
+    private String name;
+    private int imageResourceId;
 
     // Micros are used for prices to avoid rounding errors when converting between currencies.
-    private final String priceMicros;
+    private Money price;
 
-    public ItemInfo(String name, String price, int imageResourceId) {
+    public ItemInfo(String name, Money price, int imageResourceId) {
+        this.catalog = null;
+        this.index = -1;
         this.name = name;
-        this.priceMicros = price;
+        this.price = price;
         this.imageResourceId = imageResourceId;
     }
 
+    ItemInfo(ProductCatalog catalog, int index) {
+        this.catalog = catalog;
+        this.index = index;
+    }
+
     public String getName() {
+        if (name == null) name = catalog.getCatalog().getName(index);
         return name;
     }
 
     public int getImageResourceId() {
+        if (imageResourceId == 0 && catalog != null) imageResourceId = catalog.getImageResourceId(index);
         return imageResourceId;
     }
 
-    public String getPrice() {
-        return priceMicros;
+    public Money getPrice() {
+        if (price == null) price = catalog.getCatalog().getPrice(index);
+        return price;
     }
 }
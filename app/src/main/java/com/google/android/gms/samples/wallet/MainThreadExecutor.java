@@ -0,0 +1,38 @@
+package com.google.android.gms.samples.wallet;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks on the main thread, for continuations that touch views, and times deadlines there.
+ */
+final class MainThreadExecutor implements Executor, PaymentFlow.Timer {
+    static final MainThreadExecutor INSTANCE = new MainThreadExecutor();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private MainThreadExecutor() {}
+
+    @Override
+    public void execute(Runnable command) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            command.run();
+        } else {
+            mHandler.post(command);
+        }
+    }
+
+    @Override
+    public Runnable schedule(final Runnable task, long delayMillis) {
+        mHandler.postAtTime(task, task, SystemClock.uptimeMillis() + delayMillis);
+        return new Runnable() {
+            @Override
+            public void run() {
+                mHandler.removeCallbacks(task);
+            }
+        };
+    }
+}
@@ -0,0 +1,189 @@
+package com.google.android.gms.samples.wallet;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of token submissions that have not reached the backend yet.
+ * <p>
+ * Every record is {@code [length][crc32][type][id][payload]}. A batch of submissions is written
+ * with one write and one fsync (group commit), acknowledgements are appended without an fsync
+ * since losing one only means the submission is sent again. {@link #open(File)} replays the log
+ * through a read-only mapping, cuts off a torn tail record and keeps the submissions that were
+ * never acknowledged. Once enough acknowledged records pile up the log is compacted into a fresh
+ * file holding only the pending ones.
+ * <p>
+ * Not thread-safe, {@link TokenSubmitter} guards it with its own lock.
+ */
+final class PaymentJournal implements Closeable {
+    private static final byte PENDING = 1;
+    private static final byte ACKNOWLEDGED = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+    private static final int COMPACT_AFTER = 256;
+
+    private final File mFile;
+    private final LinkedHashMap<Long, TokenSubmitter.Submission> mPending = new LinkedHashMap<>();
+    private final CRC32 mCrc = new CRC32();
+    private FileChannel mChannel;
+    private ByteBuffer mBuffer = ByteBuffer.allocate(8192);
+    private int mDeadRecords;
+
+    private PaymentJournal(File file) {
+        mFile = file;
+    }
+
+    static PaymentJournal open(File file) throws IOException {
+        PaymentJournal journal = new PaymentJournal(file);
+        journal.mChannel = new RandomAccessFile(file, "rw").getChannel();
+        journal.replay();
+        return journal;
+    }
+
+    /**
+     * @return submissions that were journaled but never acknowledged, oldest first.
+     */
+    List<TokenSubmitter.Submission> pending() {
+        return new ArrayList<>(mPending.values());
+    }
+
+    /**
+     * Durably records the submissions before they are sent.
+     */
+    void append(List<TokenSubmitter.Submission> submissions) throws IOException {
+        mBuffer.clear();
+        for (int i = 0; i < submissions.size(); i++) {
+            TokenSubmitter.Submission submission = submissions.get(i);
+            writeRecord(PENDING, submission);
+            mPending.put(submission.getId(), submission);
+        }
+        flush(true);
+    }
+
+    /**
+     * Marks the submissions as delivered and compacts the log when it is mostly dead records.
+     */
+    void acknowledge(List<TokenSubmitter.Submission> submissions) throws IOException {
+        mBuffer.clear();
+        for (int i = 0; i < submissions.size(); i++) {
+            TokenSubmitter.Submission submission = submissions.get(i);
+            writeRecord(ACKNOWLEDGED, submission);
+            if (mPending.remove(submission.getId()) != null) mDeadRecords += 2;
+        }
+        flush(false);
+        if (mDeadRecords >= COMPACT_AFTER) compact();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    private void replay() throws IOException {
+        long size = mChannel.size();
+        long valid = 0;
+        if (size > 0) {
+            MappedByteBuffer in = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (in.remaining() >= HEADER_SIZE) {
+                int start = in.position();
+                int length = in.getInt();
+                int crc = in.getInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE || length > in.remaining()) break;
+                mCrc.reset();
+                for (int i = 0; i < length; i++) mCrc.update(in.get(start + HEADER_SIZE + i));
+                if ((int) mCrc.getValue() != crc) break;
+                readRecord(in);
+                in.position(start + HEADER_SIZE + length);
+                valid = in.position();
+            }
+        }
+        if (valid < size) mChannel.truncate(valid);
+        mChannel.position(valid);
+    }
+
+    private void readRecord(ByteBuffer in) {
+        byte type = in.get();
+        long id = in.getLong();
+        if (type == ACKNOWLEDGED) {
+            if (mPending.remove(id) != null) mDeadRecords += 2;
+            else mDeadRecords++;
+            return;
+        }
+        String gateway = readString(in);
+        String merchantId = readString(in);
+        String token = readString(in);
+        long micros = in.getLong();
+        PayUtils.TypeCurrency currency = PayUtils.TypeCurrency.fromCode((char) in.get(), (char) in.get(), (char) in.get());
+        if (currency == null) return;
+        mPending.put(id, new TokenSubmitter.Submission(id, gateway, merchantId, token, Money.ofMicros(micros, currency)));
+    }
+
+    private void writeRecord(byte type, TokenSubmitter.Submission submission) {
+        byte[] gateway = null, merchantId = null, token = null;
+        int length = 1 + 8;
+        if (type == PENDING) {
+            gateway = submission.getGateway().getBytes(StandardCharsets.UTF_8);
+            merchantId = submission.getGatewayMerchantId().getBytes(StandardCharsets.UTF_8);
+            token = submission.getToken().getBytes(StandardCharsets.UTF_8);
+            length += 12 + gateway.length + merchantId.length + token.length + 8 + 3;
+        }
+        ensureCapacity(HEADER_SIZE + length);
+        int start = mBuffer.position();
+        mBuffer.position(start + HEADER_SIZE);
+        mBuffer.put(type).putLong(submission.getId());
+        if (type == PENDING) {
+            mBuffer.putInt(gateway.length).put(gateway);
+            mBuffer.putInt(merchantId.length).put(merchantId);
+            mBuffer.putInt(token.length).put(token);
+            mBuffer.putLong(submission.getAmount().getMicros());
+            String code = submission.getAmount().getCurrency().getCode();
+            mBuffer.put((byte) code.charAt(0)).put((byte) code.charAt(1)).put((byte) code.charAt(2));
+        }
+        mCrc.reset();
+        mCrc.update(mBuffer.array(), start + HEADER_SIZE, length);
+        mBuffer.putInt(start, length).putInt(start + 4, (int) mCrc.getValue());
+    }
+
+    private void flush(boolean sync) throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) mChannel.write(mBuffer);
+        if (sync) mChannel.force(false);
+    }
+
+    private void compact() throws IOException {
+        File compacted = new File(mFile.getPath() + ".tmp");
+        FileChannel previous = mChannel;
+        mChannel = new RandomAccessFile(compacted, "rw").getChannel();
+        mChannel.truncate(0);
+        mBuffer.clear();
+        for (TokenSubmitter.Submission submission : mPending.values()) writeRecord(PENDING, submission);
+        flush(true);
+        previous.close();
+        if (!compacted.renameTo(mFile)) throw new IOException("Cannot replace " + mFile);
+        mDeadRecords = 0;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (mBuffer.remaining() >= extra) return;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(mBuffer.capacity() * 2, mBuffer.position() + extra));
+        mBuffer.flip();
+        grown.put(mBuffer);
+        mBuffer = grown;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,36 @@
+package com.google.android.gms.samples.wallet;
+
+import android.content.Context;
+
+import com.google.android.gms.wallet.PaymentsClient;
+import com.google.android.gms.wallet.Wallet;
+import com.google.android.gms.wallet.WalletConstants;
+
+import java.util.EnumMap;
+
+/**
+ * Process-wide PaymentsClient instances, one per environment.
+ * <p>
+ * Clients are bound to the application context, so they outlive any single Activity and are not
+ * rebuilt every time a checkout screen is recreated.
+ */
+final class PaymentsClientPool {
+    private static final EnumMap<PayUtils.TypeEnvironment, PaymentsClient> sClients =
+            new EnumMap<>(PayUtils.TypeEnvironment.class);
+
+    private PaymentsClientPool() {}
+
+    static synchronized PaymentsClient get(Context context, PayUtils.TypeEnvironment environment) {
+        PaymentsClient client = sClients.get(environment);
+        if (client == null) {
+            Wallet.WalletOptions options = new Wallet.WalletOptions.Builder()
+                    .setEnvironment(environment == PayUtils.TypeEnvironment.PROD
+                            ? WalletConstants.ENVIRONMENT_PRODUCTION
+                            : WalletConstants.ENVIRONMENT_TEST)
+                    .build();
+            client = Wallet.getPaymentsClient(context.getApplicationContext(), options);
+            sClients.put(environment, client);
+        }
+        return client;
+    }
+}
@@ -0,0 +1,77 @@
+package com.google.android.gms.samples.wallet;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Opt-in background warm-up of the payments stack.
+ * <p>
+ * Call {@link #start(Context, Configuration)} when the app starts or the user enters the cart. The
+ * client is configured, the requests are serialized and {@code isReadyToPay} is started off the
+ * main thread, so the checkout screen can pick the result up with {@link #take()}.
+ */
+public final class PaymentsPrewarm {
+    private static final String TAG = "PaymentsPrewarm";
+
+    public interface Configuration {
+        GooglePayments create(Context context);
+    }
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static Future<GooglePayments> sWarm;
+
+    private PaymentsPrewarm() {}
+
+    public static synchronized void start(Context context, final Configuration configuration) {
+        if (sWarm != null) return;
+        final Context application = context.getApplicationContext();
+        sWarm = sExecutor.submit(new Callable<GooglePayments>() {
+            @Override
+            public GooglePayments call() {
+                long start = SystemClock.elapsedRealtime();
+                GooglePayments payments = configuration.create(application);
+                payments.prewarm();
+                Log.d(TAG, "Payments stack warmed in " + (SystemClock.elapsedRealtime() - start) + " ms");
+                return payments;
+            }
+        });
+    }
+
+    /**
+     * Hands the warmed client over to the caller. Never blocks: returns null when no warm-up was
+     * started, it has not finished yet, or it has already been taken.
+     */
+    public static synchronized GooglePayments take() {
+        if (sWarm == null || !sWarm.isDone()) return null;
+        try {
+            return sWarm.get();
+        } catch (Exception e) {
+            Log.e(TAG, "Warm-up failed: " + e.toString());
+            return null;
+        } finally {
+            sWarm = null;
+        }
+    }
+}
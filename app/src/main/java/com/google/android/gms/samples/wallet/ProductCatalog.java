@@ -0,0 +1,67 @@
+package com.google.android.gms.samples.wallet;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * The product catalog shipped in {@code assets/catalog.bin}, mapped straight from the APK.
+ * <p>
+ * The asset is generated at build time from {@code src/main/catalog} and stored uncompressed, so
+ * it can be mapped in place without copying or parsing it.
+ */
+final class ProductCatalog {
+    private static final String ASSET = "catalog.bin";
+
+    private static ProductCatalog sInstance;
+
+    private final Catalog mCatalog;
+    private final Resources mResources;
+    private final String mPackageName;
+
+    private ProductCatalog(Catalog catalog, Context context) {
+        mCatalog = catalog;
+        mResources = context.getResources();
+        mPackageName = context.getPackageName();
+    }
+
+    static synchronized ProductCatalog get(Context context) throws IOException {
+        if (sInstance == null) {
+            Context application = context.getApplicationContext();
+            AssetFileDescriptor fd = application.getAssets().openFd(ASSET);
+            try {
+                FileInputStream in = fd.createInputStream();
+                try {
+                    Catalog catalog = Catalog.wrap(in.getChannel()
+                            .map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength()));
+                    sInstance = new ProductCatalog(catalog, application);
+                } finally {
+                    in.close();
+                }
+            } finally {
+                fd.close();
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the item with this SKU, or null when the catalog has none.
+     */
+    ItemInfo find(String sku) {
+        int index = mCatalog.indexOf(sku);
+        return index < 0 ? null : new ItemInfo(this, index);
+    }
+
+    Catalog getCatalog() {
+        return mCatalog;
+    }
+
+    int getImageResourceId(int index) {
+        return mResources.getIdentifier(mCatalog.getImage(index), "drawable", mPackageName);
+    }
+}
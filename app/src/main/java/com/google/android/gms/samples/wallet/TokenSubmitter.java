@@ -0,0 +1,436 @@
+package com.google.android.gms.samples.wallet;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends payment tokens to the merchant backend off the main thread.
+ * <p>
+ * Submissions go into a bounded queue and a single worker drains them in batches of up to
+ * {@code maxBatchSize}, posting each batch as a JSON array over a kept-alive connection. When the
+ * queue is full {@link #submit(Submission)} refuses the submission instead of blocking the caller.
+ * A batch that fails on the network or with a server error is posted again, up to
+ * {@code maxAttempts} times with an exponential backoff, before its submissions are reported failed.
+ * <p>
+ * With a journal file {@link #submit(Submission)} records the submission in a
+ * {@link PaymentJournal}, with an fsync, before it returns, so a token survives the process dying
+ * while earlier submissions are still being posted, and a refused one is not lost either.
+ * Concurrent submissions share the fsync: one caller writes every submission waiting at that point
+ * in one append, and those arriving meanwhile go into the next one. The worker replays what was
+ * never acknowledged when it starts. Failed and refused submissions stay in
+ * the journal and are sent on the next start, so the backend should treat
+ * {@link Submission#getId()} as an idempotency key.
+ */
+public class TokenSubmitter {
+    private static final String TAG = "TokenSubmitter";
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+    private static final int READ_TIMEOUT_MILLIS = 15000;
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_RETRY_BACKOFF_MILLIS = 1000;
+
+    /**
+     * Status of the {@link PaymentException} for a submission refused by a full queue, outside the
+     * range of the wallet's status codes.
+     */
+    public static final int STATUS_QUEUE_FULL = 1001;
+
+    public interface Listener {
+        /**
+         * Called on the worker thread once the backend accepted the submission.
+         *
+         * @param postMicros how long the post of the batch carrying the submission took, without
+         *     the time it spent journaled and queued.
+         */
+        void onSubmitted(Submission submission, long postMicros);
+
+        /**
+         * Called on the worker thread when the batch carrying the submission failed.
+         * Exceptions thrown by either call are logged and do not stop the worker.
+         *
+         * @param postMicros how long the last attempt to post the batch took.
+         */
+        void onFailed(Submission submission, Exception error, long postMicros);
+    }
+
+    public static final class Submission {
+        // Seeded from the clock so ids stay unique across process restarts and journal replays.
+        private static final AtomicLong sIds = new AtomicLong(System.currentTimeMillis() * 1000);
+
+        private final long mId;
+        private final String mGateway;
+        private final String mGatewayMerchantId;
+        private final String mToken;
+        private final Money mAmount;
+        private final long mCreatedAt;
+
+        public Submission(String gateway, String gatewayMerchantId, String token, Money amount) {
+            this(sIds.incrementAndGet(), gateway, gatewayMerchantId, token, amount, System.nanoTime());
+        }
+
+        Submission(long id, String gateway, String gatewayMerchantId, String token, Money amount) {
+            this(id, gateway, gatewayMerchantId, token, amount, 0L);
+        }
+
+        private Submission(long id, String gateway, String gatewayMerchantId, String token, Money amount, long createdAt) {
+            mId = id;
+            mGateway = gateway;
+            mGatewayMerchantId = gatewayMerchantId;
+            mToken = token;
+            mAmount = amount;
+            mCreatedAt = createdAt;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public String getGateway() {
+            return mGateway;
+        }
+
+        public String getGatewayMerchantId() {
+            return mGatewayMerchantId;
+        }
+
+        public String getToken() {
+            return mToken;
+        }
+
+        public Money getAmount() {
+            return mAmount;
+        }
+
+        /**
+         * @return microseconds since the submission was created, or -1 for a submission replayed
+         *     from the journal, whose creation time is not known.
+         */
+        public long getAgeMicros() {
+            return mCreatedAt == 0L ? -1L : TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - mCreatedAt);
+        }
+    }
+
+    private final URL mEndpoint;
+    private final int mMaxBatchSize;
+    private final BlockingQueue<Submission> mQueue;
+    private final Listener mListener;
+    private final File mJournalFile;
+    private final int mMaxAttempts;
+    private final long mRetryBackoffMillis;
+    private final Thread mWorker;
+
+    // Guards the journal, appended to by the committing submit() and acknowledged by the worker.
+    private final Object mJournalLock = new Object();
+    private boolean mJournalOpened;
+    private PaymentJournal mJournal;
+    private List<Submission> mReplayed;
+
+    // Guards the submissions waiting for the next journal commit. Never held while writing.
+    private final Object mCommitLock = new Object();
+    private final List<Submission> mUncommitted = new ArrayList<>();
+    private long mAppended;
+    private long mCommitted;
+    private boolean mCommitting;
+
+    /**
+     * @param endpoint backend URL the batches are posted to.
+     * @param capacity how many submissions may wait before {@link #submit(Submission)} refuses more.
+     * @param maxBatchSize how many submissions the backend accepts in one request, 1 disables batching.
+     * @param journalFile write-ahead journal for pending submissions, or null to keep them in memory only.
+     */
+    public TokenSubmitter(URL endpoint, int capacity, int maxBatchSize, File journalFile, Listener listener) {
+        this(endpoint, capacity, maxBatchSize, journalFile, DEFAULT_MAX_ATTEMPTS, DEFAULT_RETRY_BACKOFF_MILLIS, listener);
+    }
+
+    /**
+     * @param maxAttempts how many times a batch is posted before it is reported failed.
+     * @param retryBackoffMillis wait before the second attempt, doubled for every further one.
+     */
+    TokenSubmitter(URL endpoint, int capacity, int maxBatchSize, File journalFile,
+                   int maxAttempts, long retryBackoffMillis, Listener listener) {
+        if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize < 1");
+        if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts < 1");
+        mEndpoint = endpoint;
+        mMaxBatchSize = maxBatchSize;
+        mQueue = new ArrayBlockingQueue<>(capacity);
+        mListener = listener;
+        mJournalFile = journalFile;
+        mMaxAttempts = maxAttempts;
+        mRetryBackoffMillis = retryBackoffMillis;
+        mWorker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                drain();
+            }
+        }, TAG);
+        mWorker.setDaemon(true);
+        mWorker.start();
+    }
+
+    /**
+     * Journals and queues a submission. Does not wait for the network, but does for the journal's
+     * fsync, so call it off the main thread.
+     *
+     * @return false when the queue is full. The submission stays journaled and is sent on the next
+     *     start.
+     */
+    public boolean submit(Submission submission) {
+        commit(submission);
+        return mQueue.offer(submission);
+    }
+
+    /**
+     * Returns once {@code submission} is in the journal. The first caller to find no commit running
+     * writes everything waiting, its own submission included, and wakes the callers whose
+     * submissions it wrote. Others wait and either find theirs written or commit the next group.
+     */
+    private void commit(Submission submission) {
+        boolean interrupted = false;
+        List<Submission> group;
+        long groupEnd;
+        synchronized (mCommitLock) {
+            mUncommitted.add(submission);
+            long mine = ++mAppended;
+            while (mCommitting && mCommitted < mine) {
+                try {
+                    mCommitLock.wait();
+                } catch (InterruptedException e) {
+                    // The submission is already promised to the journal, finish the wait.
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            if (mCommitted >= mine) return;
+            mCommitting = true;
+            group = new ArrayList<>(mUncommitted);
+            mUncommitted.clear();
+            groupEnd = mAppended;
+        }
+        try {
+            append(group);
+        } finally {
+            synchronized (mCommitLock) {
+                mCommitted = groupEnd;
+                mCommitting = false;
+                mCommitLock.notifyAll();
+            }
+        }
+    }
+
+    private void append(List<Submission> group) {
+        synchronized (mJournalLock) {
+            openJournal();
+            if (mJournal == null) return;
+            try {
+                mJournal.append(group);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Cannot journal " + group.size() + " submissions", e);
+            }
+        }
+    }
+
+    public int pending() {
+        return mQueue.size();
+    }
+
+    public void shutdown() {
+        mWorker.interrupt();
+    }
+
+    private void drain() {
+        List<Submission> pending = new ArrayList<>(replayed());
+        List<Submission> batch = new ArrayList<>(mMaxBatchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (pending.isEmpty()) {
+                    pending.add(mQueue.take());
+                    mQueue.drainTo(pending);
+                }
+                List<Submission> next = pending.subList(0, Math.min(mMaxBatchSize, pending.size()));
+                batch.addAll(next);
+                next.clear();
+                send(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeJournal();
+        }
+    }
+
+    private void send(List<Submission> batch) throws InterruptedException {
+        long backoffMillis = mRetryBackoffMillis;
+        long postMicros;
+        for (int attempt = 1; ; attempt++) {
+            long started = System.nanoTime();
+            try {
+                post(batch);
+                postMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+                break;
+            } catch (IOException | RuntimeException e) {
+                postMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+                // A RuntimeException too, such as an endpoint that is not HTTP: the worker has to
+                // outlive any one batch.
+                if (attempt < mMaxAttempts && isTransient(e)) {
+                    Log.w(TAG, "Batch of " + batch.size() + " failed, attempt " + attempt + " of " + mMaxAttempts, e);
+                    Thread.sleep(backoffMillis);
+                    backoffMillis *= 2;
+                    continue;
+                }
+                Log.w(TAG, "Batch of " + batch.size() + " failed", e);
+                for (int i = 0; i < batch.size(); i++) notifyFailed(batch.get(i), e, postMicros);
+                return;
+            }
+        }
+        synchronized (mJournalLock) {
+            if (mJournal != null) {
+                try {
+                    mJournal.acknowledge(batch);
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Cannot acknowledge batch in journal", e);
+                }
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) notifySubmitted(batch.get(i), postMicros);
+    }
+
+    /**
+     * @return whether posting the batch again may succeed: a network failure or a server error,
+     *     but not a request the backend rejected or an endpoint that cannot be posted to.
+     */
+    private static boolean isTransient(Exception e) {
+        if (e instanceof HttpStatusException) return ((HttpStatusException) e).getStatus() >= 500;
+        return e instanceof IOException;
+    }
+
+    private void notifySubmitted(Submission submission, long postMicros) {
+        try {
+            mListener.onSubmitted(submission, postMicros);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Listener failed on submission " + submission.getId(), e);
+        }
+    }
+
+    private void notifyFailed(Submission submission, Exception error, long postMicros) {
+        try {
+            mListener.onFailed(submission, error, postMicros);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Listener failed on submission " + submission.getId(), e);
+        }
+    }
+
+    /**
+     * Opens the journal on first use, by the worker or by an earlier {@link #submit(Submission)},
+     * and keeps what it replayed for the worker. Called with the journal lock held.
+     */
+    private void openJournal() {
+        if (mJournalOpened) return;
+        mJournalOpened = true;
+        if (mJournalFile == null) return;
+        try {
+            mJournal = PaymentJournal.open(mJournalFile);
+            mReplayed = mJournal.pending();
+            if (!mReplayed.isEmpty()) Log.d(TAG, "Replaying " + mReplayed.size() + " pending submissions");
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot open journal " + mJournalFile, e);
+        }
+    }
+
+    /**
+     * @return the submissions left in the journal by the previous run, only the first time.
+     */
+    private List<Submission> replayed() {
+        synchronized (mJournalLock) {
+            openJournal();
+            List<Submission> replayed = mReplayed;
+            mReplayed = null;
+            return replayed == null ? Collections.<Submission>emptyList() : replayed;
+        }
+    }
+
+    private void closeJournal() {
+        synchronized (mJournalLock) {
+            if (mJournal == null) return;
+            try {
+                mJournal.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot close journal", e);
+            }
+            mJournal = null;
+        }
+    }
+
+    private void post(List<Submission> batch) throws IOException {
+        byte[] body = serialize(batch).getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection connection = (HttpURLConnection) mEndpoint.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        OutputStream out = connection.getOutputStream();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+        int code = connection.getResponseCode();
+        // Read the response to the end so the connection goes back to the keep-alive pool.
+        InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[512];
+                while (in.read(buffer) != -1) {}
+            } finally {
+                in.close();
+            }
+        }
+        if (code < 200 || code >= 300) throw new HttpStatusException(code, mEndpoint);
+    }
+
+    private static final class HttpStatusException extends IOException {
+        private final int mStatus;
+
+        HttpStatusException(int status, URL endpoint) {
+            super("HTTP " + status + " from " + endpoint);
+            mStatus = status;
+        }
+
+        int getStatus() {
+            return mStatus;
+        }
+    }
+
+    static String serialize(List<Submission> batch) {
+        RequestWriter writer = RequestWriter.obtain().beginArray();
+        for (int i = 0; i < batch.size(); i++) {
+            Submission submission = batch.get(i);
+            writer.beginObject()
+                    .name("id").value(submission.mId)
+                    .name("gateway").value(submission.mGateway)
+                    .name("gatewayMerchantId").value(submission.mGatewayMerchantId)
+                    .name("amount").value(submission.mAmount.toDecimalString())
+                    .name("currencyCode").value(submission.mAmount.getCurrency().getCode())
+                    .name("token").value(submission.mToken)
+                    .endObject();
+        }
+        return writer.endArray().toString();
+    }
+}
@@ -0,0 +1,321 @@
+package com.google.android.gms.samples.wallet;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link TokenSubmitter} against a stub backend on a local port.
+ */
+public class TokenSubmitterTest {
+    private static final long TIMEOUT_SECONDS = 5;
+    private static final Money AMOUNT = Money.ofMicros(30000000L, PayUtils.TypeCurrency.USD);
+
+    private HttpServer mServer;
+    private URL mEndpoint;
+    private final BlockingQueue<String> mRequests = new LinkedBlockingQueue<>();
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private volatile boolean mHold;
+    private volatile int mStatus = 200;
+    private final AtomicInteger mUnavailable = new AtomicInteger();
+
+    private final BlockingQueue<TokenSubmitter.Submission> mSubmitted = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Exception> mFailures = new LinkedBlockingQueue<>();
+    private final TokenSubmitter.Listener mListener = new TokenSubmitter.Listener() {
+        @Override
+        public void onSubmitted(TokenSubmitter.Submission submission, long postMicros) {
+            mSubmitted.add(submission);
+        }
+
+        @Override
+        public void onFailed(TokenSubmitter.Submission submission, Exception error, long postMicros) {
+            mFailures.add(error);
+        }
+    };
+
+    private TokenSubmitter mSubmitter;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/tokens", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequests.add(readFully(exchange.getRequestBody()));
+                if (mHold) {
+                    try {
+                        mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                exchange.sendResponseHeaders(mUnavailable.getAndDecrement() > 0 ? 503 : mStatus, -1);
+                exchange.close();
+            }
+        });
+        mServer.start();
+        mEndpoint = new URL("http", "127.0.0.1", mServer.getAddress().getPort(), "/tokens");
+    }
+
+    @After
+    public void tearDown() {
+        if (mSubmitter != null) mSubmitter.shutdown();
+        mRelease.countDown();
+        mServer.stop(0);
+    }
+
+    @Test
+    public void batchesSubmissionsQueuedWhileAPostIsInFlight() throws Exception {
+        mHold = true;
+        mSubmitter = new TokenSubmitter(mEndpoint, 16, 3, null, mListener);
+        assertTrue(mSubmitter.submit(submission("first")));
+        assertNotNull(mRequests.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (int i = 0; i < 7; i++) {
+            assertTrue(mSubmitter.submit(submission("queued-" + i)));
+        }
+        mRelease.countDown();
+
+        assertEquals(3, submissionsIn(nextRequest()));
+        assertEquals(3, submissionsIn(nextRequest()));
+        assertEquals(1, submissionsIn(nextRequest()));
+        for (int i = 0; i < 8; i++) {
+            assertNotNull(mSubmitted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        assertTrue(mFailures.isEmpty());
+    }
+
+    @Test
+    public void refusesSubmissionsOnceTheQueueIsFull() throws Exception {
+        mHold = true;
+        mSubmitter = new TokenSubmitter(mEndpoint, 2, 1, null, mListener);
+        assertTrue(mSubmitter.submit(submission("in-flight")));
+        assertNotNull(mRequests.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(mSubmitter.submit(submission("waiting-1")));
+        assertTrue(mSubmitter.submit(submission("waiting-2")));
+
+        assertFalse(mSubmitter.submit(submission("refused")));
+        assertEquals(2, mSubmitter.pending());
+
+        mRelease.countDown();
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(mSubmitted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        assertNull(mSubmitted.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void reportsRejectedBatchesAndKeepsGoing() throws Exception {
+        mStatus = 500;
+        mSubmitter = new TokenSubmitter(mEndpoint, 16, 1, null, 2, 10, mListener);
+        mSubmitter.submit(submission("rejected"));
+        Exception error = mFailures.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(String.valueOf(error), error instanceof IOException);
+
+        mStatus = 200;
+        mSubmitter.submit(submission("accepted"));
+        assertEquals("accepted", tokenOf(mSubmitted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void survivesAnEndpointThatIsNotHttp() throws Exception {
+        File file = File.createTempFile("tokens", ".json");
+        file.deleteOnExit();
+        mSubmitter = new TokenSubmitter(file.toURI().toURL(), 16, 1, null, mListener);
+        mSubmitter.submit(submission("first"));
+        mSubmitter.submit(submission("second"));
+
+        assertTrue(mFailures.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS) instanceof RuntimeException);
+        assertTrue(mFailures.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS) instanceof RuntimeException);
+    }
+
+    @Test
+    public void survivesAListenerThatThrows() throws Exception {
+        mSubmitter = new TokenSubmitter(mEndpoint, 16, 1, null, new TokenSubmitter.Listener() {
+            @Override
+            public void onSubmitted(TokenSubmitter.Submission submission, long postMicros) {
+                mSubmitted.add(submission);
+                throw new IllegalStateException("listener bug");
+            }
+
+            @Override
+            public void onFailed(TokenSubmitter.Submission submission, Exception error, long postMicros) {
+                throw new IllegalStateException("listener bug");
+            }
+        });
+        mSubmitter.submit(submission("first"));
+        mSubmitter.submit(submission("second"));
+
+        assertEquals("first", tokenOf(mSubmitted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+        assertEquals("second", tokenOf(mSubmitted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void journalsSubmissionsBeforeTheWorkerReachesThem() throws Exception {
+        File journal = newJournalFile();
+        mHold = true;
+        mSubmitter = new TokenSubmitter(mEndpoint, 1, 1, journal, mListener);
+        assertTrue(mSubmitter.submit(submission("in-flight")));
+        assertNotNull(mRequests.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(mSubmitter.submit(submission("queued")));
+        assertFalse(mSubmitter.submit(submission("refused")));
+
+        // What a restart would replay if the process died now.
+        assertEquals(Arrays.asList("in-flight", "queued", "refused"), journaledTokens(journal));
+
+        mRelease.countDown();
+        assertEquals("in-flight", tokenOf(mSubmitted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+        assertEquals("queued", tokenOf(mSubmitted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+        assertEquals(Collections.singletonList("refused"), journaledTokens(journal));
+    }
+
+    @Test
+    public void replaysJournaledSubmissionsOnStart() throws Exception {
+        File journal = newJournalFile();
+        mStatus = 500;
+        mSubmitter = new TokenSubmitter(mEndpoint, 16, 1, journal, 1, 0, mListener);
+        mSubmitter.submit(submission("failed-before-restart"));
+        assertNotNull(mFailures.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        mSubmitter.shutdown();
+
+        mStatus = 200;
+        mSubmitter = new TokenSubmitter(mEndpoint, 16, 1, journal, mListener);
+        TokenSubmitter.Submission replayed = mSubmitted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals("failed-before-restart", tokenOf(replayed));
+        assertEquals(-1L, replayed.getAgeMicros());
+    }
+
+    @Test
+    public void retriesABatchUntilTheServerRecovers() throws Exception {
+        mUnavailable.set(2);
+        mSubmitter = new TokenSubmitter(mEndpoint, 16, 1, null, 3, 10, mListener);
+        mSubmitter.submit(submission("retried"));
+
+        assertEquals("retried", tokenOf(mSubmitted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+        assertEquals(3, mRequests.size());
+        assertTrue(mFailures.isEmpty());
+    }
+
+    @Test
+    public void doesNotRetryABatchTheBackendRejected() throws Exception {
+        mStatus = 400;
+        mSubmitter = new TokenSubmitter(mEndpoint, 16, 1, null, 3, 10, mListener);
+        mSubmitter.submit(submission("rejected"));
+
+        assertNotNull(mFailures.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, mRequests.size());
+    }
+
+    @Test
+    public void journalsConcurrentSubmissions() throws Exception {
+        final int threads = 16;
+        File journal = newJournalFile();
+        mHold = true;
+        mSubmitter = new TokenSubmitter(mEndpoint, threads, threads, journal, mListener);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger accepted = new AtomicInteger();
+        List<Thread> submitters = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final String token = "concurrent-" + i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (mSubmitter.submit(submission(token))) accepted.incrementAndGet();
+                }
+            });
+            thread.start();
+            submitters.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : submitters) thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+        assertEquals(threads, accepted.get());
+        assertEquals(threads, journaledTokens(journal).size());
+        mRelease.countDown();
+        for (int i = 0; i < threads; i++) {
+            assertNotNull(mSubmitted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    private String nextRequest() throws InterruptedException {
+        String request = mRequests.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("no request within " + TIMEOUT_SECONDS + " s", request);
+        return request;
+    }
+
+    private static File newJournalFile() throws IOException {
+        File journal = File.createTempFile("payments", ".journal");
+        journal.deleteOnExit();
+        return journal;
+    }
+
+    private static List<String> journaledTokens(File file) throws IOException {
+        PaymentJournal journal = PaymentJournal.open(file);
+        try {
+            List<String> tokens = new ArrayList<>();
+            for (TokenSubmitter.Submission submission : journal.pending()) {
+                tokens.add(submission.getToken());
+            }
+            return tokens;
+        } finally {
+            journal.close();
+        }
+    }
+
+    private static TokenSubmitter.Submission submission(String token) {
+        return new TokenSubmitter.Submission("example", "exampleGatewayMerchantId", token, AMOUNT);
+    }
+
+    private static String tokenOf(TokenSubmitter.Submission submission) {
+        return submission == null ? null : submission.getToken();
+    }
+
+    private static int submissionsIn(String body) {
+        int count = 0;
+        for (int i = body.indexOf("\"id\":"); i >= 0; i = body.indexOf("\"id\":", i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read; (read = in.read(buffer)) != -1; ) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
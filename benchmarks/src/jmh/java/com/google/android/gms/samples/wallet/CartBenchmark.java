@@ -0,0 +1,40 @@
+package com.google.android.gms.samples.wallet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cart updates and the TransactionInfo written after each of them.
+ */
+@State(Scope.Benchmark)
+public class CartBenchmark {
+    @Param({"1", "50"})
+    public int lines;
+
+    private Cart mCart;
+    private int mQuantity;
+
+    @Setup
+    public void setUp() {
+        PayUtils.TypeCurrency usd = PayUtils.TypeCurrency.USD;
+        mCart = new Cart(usd).setTaxRate(825, false).setShipping(Money.ofMinorUnits(499, usd), false);
+        for (int i = 0; i < lines; i++) {
+            mCart.add("sku-" + i, "Item " + i, Money.ofMinorUnits(1000 + i, usd), 1);
+        }
+    }
+
+    @Benchmark
+    public long changeQuantity() {
+        mQuantity = (mQuantity & 7) + 1;
+        return mCart.setQuantity("sku-0", mQuantity).getTotal().getMicros();
+    }
+
+    @Benchmark
+    public String changeQuantityAndSerialize() {
+        mQuantity = (mQuantity & 7) + 1;
+        return mCart.setQuantity("sku-0", mQuantity).getTransactionInfo();
+    }
+}
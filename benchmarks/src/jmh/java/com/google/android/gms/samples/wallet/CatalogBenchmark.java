@@ -0,0 +1,53 @@
+package com.google.android.gms.samples.wallet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SKU lookups in a catalog of 50000 items. The gc profiler should report no allocation for
+ * {@link #indexOf()}.
+ */
+@State(Scope.Benchmark)
+public class CatalogBenchmark {
+    private static final int SIZE = 50000;
+
+    private Catalog mCatalog;
+    private String[] mSkus;
+    private int mNext;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<CatalogConverter.Item> items = new ArrayList<>(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            items.add(new CatalogConverter.Item("SKU-" + i, "Item " + i,
+                    Money.ofMinorUnits(100 + i, PayUtils.TypeCurrency.USD), "bike"));
+        }
+        mSkus = new String[1024];
+        for (int i = 0; i < mSkus.length; i++) {
+            mSkus[i] = "SKU-" + i * (SIZE / mSkus.length);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CatalogConverter.write(items, out);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(out.size());
+        buffer.put(out.toByteArray()).flip();
+        mCatalog = Catalog.wrap(buffer);
+    }
+
+    @Benchmark
+    public int indexOf() {
+        return mCatalog.indexOf(mSkus[mNext++ & (mSkus.length - 1)]);
+    }
+
+    @Benchmark
+    public long priceMicros() {
+        return mCatalog.getPriceMicros(mCatalog.indexOf(mSkus[mNext++ & (mSkus.length - 1)]));
+    }
+}
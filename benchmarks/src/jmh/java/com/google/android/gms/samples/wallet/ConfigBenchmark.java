@@ -0,0 +1,34 @@
+package com.google.android.gms.samples.wallet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Configuration setup and the price handling done for every checkout.
+ */
+@State(Scope.Benchmark)
+public class ConfigBenchmark {
+    private String mAmount = "1234.56";
+
+    @Benchmark
+    public PaymentConfig paymentConfig() {
+        return new PaymentConfig.Builder()
+                .setMerchantName("TaxiAdminTest")
+                .addCards(PayUtils.Cards.MASTERCARD, PayUtils.Cards.VISA)
+                .addPayMethods(PayUtils.PayMethod.PAN_ONLY, PayUtils.PayMethod.CRYPTOGRAM_3DS)
+                .addParameter("gateway", "portmonecom")
+                .addParameter("gatewayMerchantId", "1185")
+                .build();
+    }
+
+    @Benchmark
+    public String moneyRoundTrip() {
+        return Money.parse(mAmount, PayUtils.TypeCurrency.USD).times(3).toDecimalString();
+    }
+
+    @Benchmark
+    public PayUtils.TypeCurrency currencyLookup() {
+        return PayUtils.TypeCurrency.fromCode("UAH");
+    }
+}
@@ -0,0 +1,118 @@
+package com.google.android.gms.samples.wallet;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+
+/**
+ * Request serialization: the per-tap PaymentDataRequest, the IsReadyToPayRequest, the static
+ * {@link PaymentsUtil} helpers, and the JSONObject tree the requests used to be built with.
+ * <p>
+ * The tap-to-sheet pair covers everything between a tap and handing the request to the sheet:
+ * serializing it, then {@code PaymentDataRequest.fromJson}, stood in for by the org.json parse it
+ * does on the device.
+ */
+@State(Scope.Benchmark)
+public class RequestBenchmark {
+    private PaymentConfig mConfig;
+    private Money mPrice;
+
+    @Setup
+    public void setUp() {
+        mConfig = new PaymentConfig.Builder()
+                .setMerchantName("TaxiAdminTest")
+                .addCards(PayUtils.Cards.MASTERCARD, PayUtils.Cards.VISA)
+                .addPayMethods(PayUtils.PayMethod.PAN_ONLY, PayUtils.PayMethod.CRYPTOGRAM_3DS)
+                .addParameter("gateway", "portmonecom")
+                .addParameter("gatewayMerchantId", "1185")
+                .build();
+        mPrice = Money.ofMicros(30000000L, PayUtils.TypeCurrency.USD);
+    }
+
+    /**
+     * What GooglePayments does on every tap: splice the price into the cached template.
+     */
+    @Benchmark
+    public String paymentDataRequest() {
+        return mConfig.getPaymentTemplate().splice(mPrice.toDecimalString(), mPrice.getCurrency().getCode());
+    }
+
+    @Benchmark
+    public PaymentRequestTemplate paymentDataRequestTemplate() {
+        return PaymentRequests.paymentTemplate(mConfig);
+    }
+
+    @Benchmark
+    public String isReadyToPayRequest() {
+        return PaymentRequests.isReadyToPayRequest(mConfig);
+    }
+
+    @Benchmark
+    public String paymentsUtilIsReadyToPayRequest() {
+        return PaymentsUtil.getIsReadyToPayRequest();
+    }
+
+    @Benchmark
+    public String paymentsUtilPaymentDataRequest() {
+        return PaymentsUtil.getPaymentDataRequest("30.00");
+    }
+
+    /**
+     * Baseline: the JSONObject tree GooglePayments built for every tap before the template.
+     */
+    @Benchmark
+    public String jsonObjectTreePaymentDataRequest() throws JSONException {
+        return jsonObjectTree();
+    }
+
+    @Benchmark
+    public JSONObject tapToSheet() throws JSONException {
+        return new JSONObject(paymentDataRequest());
+    }
+
+    /**
+     * Baseline: tap to sheet with the JSONObject tree.
+     */
+    @Benchmark
+    public JSONObject jsonObjectTreeTapToSheet() throws JSONException {
+        return new JSONObject(jsonObjectTree());
+    }
+
+    private String jsonObjectTree() throws JSONException {
+        JSONObject parameters = new JSONObject();
+        for (Map.Entry<String, String> parameter : mConfig.getTokenParameters().entrySet()) {
+            parameters.put(parameter.getKey(), parameter.getValue());
+        }
+        JSONArray authMethods = new JSONArray();
+        for (PayUtils.PayMethod method : mConfig.getMethods()) authMethods.put(method.getPayMethod());
+        JSONArray networks = new JSONArray();
+        for (PayUtils.Cards card : mConfig.getCards()) networks.put(card.getCardNetwork());
+
+        JSONObject cardPaymentMethod = new JSONObject()
+                .put("type", "CARD")
+                .put("parameters", new JSONObject()
+                        .put("allowedAuthMethods", authMethods)
+                        .put("allowedCardNetworks", networks))
+                .put("tokenizationSpecification", new JSONObject()
+                        .put("type", "PAYMENT_GATEWAY")
+                        .put("parameters", parameters));
+        return new JSONObject()
+                .put("apiVersion", 2)
+                .put("apiVersionMinor", 0)
+                .put("allowedPaymentMethods", new JSONArray().put(cardPaymentMethod))
+                .put("transactionInfo", new JSONObject()
+                        .put("totalPrice", mPrice.toDecimalString())
+                        .put("totalPriceStatus", "FINAL")
+                        .put("currencyCode", mPrice.getCurrency().getCode()))
+                .put("merchantInfo", new JSONObject().put("merchantName", mConfig.getMerchantName()))
+                .put("shippingAddressRequired", false)
+                .put("shippingAddressParameters", new JSONObject().put("phoneNumberRequired", false))
+                .toString();
+    }
+}
@@ -0,0 +1,126 @@
+package com.google.android.gms.samples.wallet;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.ParseException;
+import java.util.Random;
+
+/**
+ * Token extraction from a PaymentData response, as done in CheckoutActivity.handlePaymentSuccess:
+ * the token alone, and every field {@link PaymentToken} exposes, streaming and with a JSONObject
+ * tree.
+ */
+@State(Scope.Benchmark)
+public class TokenBenchmark {
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    private String mPaymentData;
+
+    @Setup
+    public void setUp() throws JSONException {
+        Random random = new Random(42);
+        JSONObject signedMessage = new JSONObject()
+                .put("encryptedMessage", base64(random, 1200))
+                .put("ephemeralPublicKey", base64(random, 88))
+                .put("tag", base64(random, 44));
+        JSONObject token = new JSONObject()
+                .put("signature", base64(random, 96))
+                .put("intermediateSigningKey", new JSONObject()
+                        .put("signedKey", new JSONObject()
+                                .put("keyValue", base64(random, 124))
+                                .put("keyExpiration", "1893456000000")
+                                .toString())
+                        .put("signatures", base64(random, 96)))
+                .put("protocolVersion", "ECv2")
+                .put("signedMessage", signedMessage.toString());
+        mPaymentData = new JSONObject()
+                .put("apiVersionMinor", 0)
+                .put("apiVersion", 2)
+                .put("paymentMethodData", new JSONObject()
+                        .put("description", "Visa \u2022\u2022\u2022\u2022 1234")
+                        .put("tokenizationData", new JSONObject()
+                                .put("type", "PAYMENT_GATEWAY")
+                                .put("token", token.toString()))
+                        .put("type", "CARD")
+                        .put("info", new JSONObject()
+                                .put("cardNetwork", "VISA")
+                                .put("cardDetails", "1234")
+                                .put("billingAddress", new JSONObject()
+                                        .put("name", "Jane Doe")
+                                        .put("address1", "1600 Amphitheatre Parkway")
+                                        .put("locality", "Mountain View")
+                                        .put("administrativeArea", "CA")
+                                        .put("countryCode", "US")
+                                        .put("postalCode", "94043"))))
+                .put("email", "jane.doe@example.com")
+                .toString();
+    }
+
+    @Benchmark
+    public String paymentToken() throws ParseException {
+        return PaymentToken.parse(mPaymentData).getToken();
+    }
+
+    /**
+     * Baseline: the JSONObject walk handlePaymentSuccess used before PaymentToken.
+     */
+    @Benchmark
+    public String jsonObjectTree() throws JSONException {
+        return new JSONObject(mPaymentData)
+                .getJSONObject("paymentMethodData")
+                .getJSONObject("tokenizationData")
+                .getString("token");
+    }
+
+    @Benchmark
+    public void paymentTokenAllFields(Blackhole blackhole) throws ParseException {
+        PaymentToken token = PaymentToken.parse(mPaymentData);
+        blackhole.consume(token.getToken());
+        blackhole.consume(token.getTokenizationType());
+        blackhole.consume(token.getCardNetwork());
+        blackhole.consume(token.getCardDetails());
+        PaymentToken.Address address = token.getBillingAddress();
+        blackhole.consume(address.getName());
+        blackhole.consume(address.getAddress1());
+        blackhole.consume(address.getLocality());
+        blackhole.consume(address.getAdministrativeArea());
+        blackhole.consume(address.getCountryCode());
+        blackhole.consume(address.getPostalCode());
+        blackhole.consume(token.getEmail());
+    }
+
+    /**
+     * Baseline: the same fields out of a JSONObject tree.
+     */
+    @Benchmark
+    public void jsonObjectTreeAllFields(Blackhole blackhole) throws JSONException {
+        JSONObject paymentData = new JSONObject(mPaymentData);
+        JSONObject methodData = paymentData.getJSONObject("paymentMethodData");
+        JSONObject tokenizationData = methodData.getJSONObject("tokenizationData");
+        blackhole.consume(tokenizationData.getString("token"));
+        blackhole.consume(tokenizationData.getString("type"));
+        JSONObject info = methodData.getJSONObject("info");
+        blackhole.consume(info.getString("cardNetwork"));
+        blackhole.consume(info.getString("cardDetails"));
+        JSONObject address = info.getJSONObject("billingAddress");
+        blackhole.consume(address.optString("name"));
+        blackhole.consume(address.optString("address1"));
+        blackhole.consume(address.optString("locality"));
+        blackhole.consume(address.optString("administrativeArea"));
+        blackhole.consume(address.optString("countryCode"));
+        blackhole.consume(address.optString("postalCode"));
+        blackhole.consume(paymentData.optString("email"));
+    }
+
+    private static String base64(Random random, int length) {
+        StringBuilder value = new StringBuilder(length);
+        for (int i = 0; i < length; i++) value.append(BASE64.charAt(random.nextInt(BASE64.length())));
+        return value.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package com.google.android.gms.samples.wallet;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ECv2 token verification and decryption with locally generated root, intermediate and recipient
+ * keys, one token at a time and in parallel batches.
+ */
+@State(Scope.Benchmark)
+public class TokenVerifierBenchmark {
+    private static final String RECIPIENT_ID = "merchant:12345678901234567890";
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    @Param({"256"})
+    public int batch;
+
+    private PaymentTokenVerifier mVerifier;
+    private List<String> mTokens;
+    private ExecutorService mExecutor;
+    private int mThreads;
+    private int mNext;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException, JSONException {
+        KeyPair root = TokenSealer.generateKeyPair();
+        KeyPair recipient = TokenSealer.generateKeyPair();
+        long now = System.currentTimeMillis();
+        String rootKeys = new JSONObject()
+                .put("keys", new JSONArray().put(new JSONObject()
+                        .put("keyValue", TokenSealer.base64(root.getPublic().getEncoded()))
+                        .put("protocolVersion", "ECv2")
+                        .put("keyExpiration", String.valueOf(now + 365 * DAY_MILLIS))))
+                .toString();
+        mVerifier = new PaymentTokenVerifier.Builder()
+                .setRecipientId(RECIPIENT_ID)
+                .addRootSigningKeys(rootKeys)
+                .addRecipientPrivateKey(TokenSealer.base64(recipient.getPrivate().getEncoded()))
+                .build();
+
+        TokenSealer sealer = new TokenSealer(root, TokenSealer.generateKeyPair(), RECIPIENT_ID, now + 30 * DAY_MILLIS);
+        mTokens = new ArrayList<>(batch);
+        for (int i = 0; i < batch; i++) {
+            String message = new JSONObject()
+                    .put("messageExpiration", String.valueOf(now + DAY_MILLIS))
+                    .put("messageId", "message-" + i)
+                    .put("paymentMethod", "CARD")
+                    .put("paymentMethodDetails", new JSONObject()
+                            .put("pan", "4111111111111111")
+                            .put("expirationMonth", 12)
+                            .put("expirationYear", 2030)
+                            .put("authMethod", "PAN_ONLY"))
+                    .toString();
+            mTokens.add(sealer.seal(message, (ECPublicKey) recipient.getPublic()));
+        }
+        // Check the tokens once, and warm the intermediate key cache.
+        mVerifier.decrypt(mTokens.get(0));
+
+        mThreads = Runtime.getRuntime().availableProcessors();
+        mExecutor = Executors.newFixedThreadPool(mThreads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Benchmark
+    public String decrypt() throws GeneralSecurityException {
+        mNext = (mNext + 1) % batch;
+        return mVerifier.decrypt(mTokens.get(mNext));
+    }
+
+    @Benchmark
+    public List<PaymentTokenVerifier.Result> decryptAllParallel() throws InterruptedException {
+        return mVerifier.decryptAll(mTokens, mExecutor, mThreads);
+    }
+}
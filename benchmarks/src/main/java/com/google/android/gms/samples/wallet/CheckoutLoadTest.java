@@ -0,0 +1,360 @@
+package com.google.android.gms.samples.wallet;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Load driver: runs many concurrent checkout sessions against a {@link SimulatedWalletClient} and
+ * reports throughput, latency percentiles and the breakdown of outcomes.
+ * <p>
+ * Each session drives the same {@link PaymentFlow} as the app: readiness through the shared
+ * {@link ReadinessCache} under its deadline, the payment sheet for the cart's PaymentDataRequest
+ * without a deadline, and token extraction. The token is then submitted to one of several local stub gateways picked by a {@link GatewayRouter},
+ * each given as {@code name:medianMillis:errorRate}. Stage latencies come from
+ * {@link CheckoutMetrics}.
+ * <pre>
+ * ./gradlew :benchmarks:loadTest -PloadTestArgs="sessions=100000 concurrency=5000 networkErrorRate=0.02"
+ * </pre>
+ * Latencies are given in milliseconds; run with {@code help} for the options and their defaults.
+ */
+public final class CheckoutLoadTest {
+    private static final PayUtils.TypeCurrency CURRENCY = PayUtils.TypeCurrency.USD;
+
+    private static final PaymentConfig STORE_CONFIG = new PaymentConfig.Builder()
+            .setMerchantName("Load Test")
+            .addCards(PayUtils.Cards.MASTERCARD, PayUtils.Cards.VISA)
+            .addPayMethods(PayUtils.PayMethod.PAN_ONLY, PayUtils.PayMethod.CRYPTOGRAM_3DS)
+            .addParameter("gateway", "example")
+            .addParameter("gatewayMerchantId", "exampleGatewayMerchantId")
+            .build();
+
+    private final Options mOptions;
+    private final ScheduledThreadPoolExecutor mScheduler;
+    private final SimulatedWalletClient mClient;
+    private final PaymentFlow mFlow;
+    private final Semaphore mSlots;
+    private final CountDownLatch mFinished;
+    private final LatencyHistogram mSessionLatency = new LatencyHistogram();
+    private final ConcurrentMap<String, AtomicLong> mOutcomes = new ConcurrentHashMap<>();
+    private final Map<String, StubGateway> mStubGateways = new LinkedHashMap<>();
+    private final GatewayRouter mRouter;
+
+    private CheckoutLoadTest(Options options) {
+        mOptions = options;
+        mScheduler = new ScheduledThreadPoolExecutor(options.getInt("threads"));
+        mScheduler.setRemoveOnCancelPolicy(true);
+        mClient = new SimulatedWalletClient.Builder(mScheduler)
+                .setSeed(options.getLong("seed"))
+                .setReadinessLatency(SimulatedWalletClient.Latency.logNormal(
+                        options.getMicros("readinessMedian"), options.getMicros("readinessP99")))
+                .setPaymentLatency(SimulatedWalletClient.Latency.logNormal(
+                        options.getMicros("paymentMedian"), options.getMicros("paymentP99")))
+                .setCancelRate(options.getDouble("cancelRate"))
+                .addFailure(SimulatedWalletClient.STATUS_NETWORK_ERROR, options.getDouble("networkErrorRate"))
+                .addFailure(SimulatedWalletClient.STATUS_INTERNAL_ERROR, options.getDouble("internalErrorRate"))
+                .build();
+        GatewayRouter.Builder router = new GatewayRouter.Builder(STORE_CONFIG)
+                .setOpenPeriod(options.getLong("gatewayOpenPeriod"));
+        for (String spec : options.getString("gateways").split(",")) {
+            StubGateway gateway = new StubGateway(spec, options.getLong("seed") + mStubGateways.size());
+            mStubGateways.put(gateway.mName, gateway);
+            router.addGateway(gateway.mName, gateway.mName + "-merchant");
+        }
+        mRouter = router.build();
+        mFlow = new PaymentFlow(mClient, ReadinessCache.getInstance(PayUtils.TypeEnvironment.TEST),
+                mScheduler, PaymentFlow.timer(mScheduler))
+                .setConfig(STORE_CONFIG)
+                .setExecutor(mScheduler)
+                .setReadinessTtl(options.getLong("readinessTtl"))
+                .setReadinessDeadline(options.getLong("readinessDeadline"));
+        mSlots = new Semaphore(options.getInt("concurrency"));
+        mFinished = new CountDownLatch(options.getInt("sessions"));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Options options = new Options();
+        try {
+            options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: CheckoutLoadTest [name=value...], defaults:");
+            System.err.println(options);
+            System.exit(2);
+        }
+        System.out.println(options);
+        new CheckoutLoadTest(options).run();
+    }
+
+    private void run() throws InterruptedException {
+        CheckoutMetrics.reset();
+        CheckoutMetrics.setEnabled(true);
+        ReadinessCache.getInstance(PayUtils.TypeEnvironment.TEST).invalidateAll();
+
+        int sessions = mOptions.getInt("sessions");
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            mSlots.acquire();
+            new Session(i).start();
+        }
+        mFinished.await();
+        long elapsed = System.nanoTime() - start;
+        mScheduler.shutdown();
+        report(sessions, elapsed);
+    }
+
+    private void report(int sessions, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        LatencyHistogram.Snapshot latency = mSessionLatency.snapshot();
+        System.out.println(String.format(Locale.ROOT, "%d sessions in %.2f s, %.1f sessions/s, %d wallet calls",
+                sessions, seconds, sessions / seconds, mClient.getCallCount()));
+        System.out.println(String.format(Locale.ROOT,
+                "session latency ms: p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f",
+                latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(90) / 1e3,
+                latency.getValueAtPercentile(99) / 1e3, latency.getValueAtPercentile(99.9) / 1e3,
+                latency.getMax() / 1e3));
+
+        System.out.println("outcomes:");
+        List<String> outcomes = new ArrayList<>(mOutcomes.keySet());
+        Collections.sort(outcomes);
+        for (String outcome : outcomes) {
+            long count = mOutcomes.get(outcome).get();
+            System.out.println(String.format(Locale.ROOT, "  %-36s %8d  %6.2f%%", outcome, count, 100.0 * count / sessions));
+        }
+
+        System.out.println("gateways:");
+        for (GatewayRouter.Gateway gateway : mRouter.getGateways()) {
+            System.out.println(String.format(Locale.ROOT, "  %-12s %8d routed  %s",
+                    gateway.getName(), mStubGateways.get(gateway.getName()).mRouted.get(), gateway));
+        }
+
+        System.out.println("stages:");
+        for (Map.Entry<CheckoutMetrics.Stage, CheckoutMetrics.StageSnapshot> stage : CheckoutMetrics.snapshot().entrySet()) {
+            if (stage.getValue().getLatency().getCount() == 0) continue;
+            System.out.println(String.format(Locale.ROOT, "  %-22s %s", stage.getKey(), stage.getValue()));
+        }
+    }
+
+    /**
+     * One shopper: checks readiness, opens the payment sheet for a cart and extracts the token,
+     * all through the {@link PaymentFlow}, then submits the token to the routed gateway.
+     */
+    private final class Session {
+        private final int mId;
+        private final long mStart = System.nanoTime();
+
+        Session(int id) {
+            mId = id;
+        }
+
+        void start() {
+            mFlow.readiness().whenComplete(new BiConsumer<Boolean, Throwable>() {
+                @Override
+                public void accept(Boolean ready, Throwable error) {
+                    if (error != null) finish("readiness " + outcome(error));
+                    else if (ready) pay();
+                    else finish("not ready to pay or check failed");
+                }
+            });
+        }
+
+        private void pay() {
+            Cart cart = new Cart(CURRENCY).setTaxRate(825, false);
+            int lines = 1 + mId % mOptions.getInt("maxLines");
+            for (int i = 0; i < lines; i++) {
+                cart.add("sku-" + i, "Item " + i, Money.ofMinorUnits(999 + 100 * i, CURRENCY), 1 + (mId + i) % 3);
+            }
+            final GatewayRouter.Gateway gateway = mRouter.route();
+            mFlow.pay(gateway, cart).whenComplete(new BiConsumer<PaymentResult, Throwable>() {
+                @Override
+                public void accept(PaymentResult result, Throwable error) {
+                    if (error != null) {
+                        finish("loadPaymentData " + outcome(error));
+                    } else if (result.isCanceled()) {
+                        finish("canceled");
+                    } else {
+                        parseToken(result, gateway);
+                    }
+                }
+            });
+        }
+
+        private void parseToken(PaymentResult result, GatewayRouter.Gateway gateway) {
+            try {
+                PaymentFlow.parseToken(result).getToken();
+            } catch (ParseException e) {
+                finish("token parse error");
+                return;
+            }
+            submit(gateway.getName());
+        }
+
+        private void submit(final String gateway) {
+            final StubGateway stub = mStubGateways.get(gateway);
+            stub.mRouted.incrementAndGet();
+            final long latencyMicros = stub.latencyMicros();
+            final boolean failed = stub.fails();
+            mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (failed) {
+                        mRouter.recordFailure(gateway, latencyMicros);
+                        finish("submission failed");
+                    } else {
+                        mRouter.recordSuccess(gateway, latencyMicros);
+                        finish("completed");
+                    }
+                }
+            }, latencyMicros, TimeUnit.MICROSECONDS);
+        }
+
+        private void finish(String outcome) {
+            mSessionLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - mStart));
+            AtomicLong count = mOutcomes.get(outcome);
+            if (count == null) {
+                AtomicLong created = new AtomicLong();
+                count = mOutcomes.putIfAbsent(outcome, created);
+                if (count == null) count = created;
+            }
+            count.incrementAndGet();
+            mSlots.release();
+            mFinished.countDown();
+        }
+    }
+
+    /**
+     * Local stand-in for a payment gateway: accepts or rejects a token after a log-normal delay
+     * with a long tail, five times the median at the 99th percentile.
+     */
+    private static final class StubGateway {
+        final String mName;
+        final AtomicLong mRouted = new AtomicLong();
+        private final double mMu;
+        private final double mSigma = Math.log(5) / 2.326;
+        private final double mErrorRate;
+        private final Random mRandom;
+
+        /**
+         * @param spec {@code name:medianMillis:errorRate}.
+         */
+        StubGateway(String spec, long seed) {
+            String[] fields = spec.split(":");
+            if (fields.length != 3) throw new IllegalArgumentException("Gateway is not name:medianMillis:errorRate: " + spec);
+            mName = fields[0];
+            mMu = Math.log(Double.parseDouble(fields[1]) * 1000);
+            mErrorRate = Double.parseDouble(fields[2]);
+            mRandom = new Random(seed);
+        }
+
+        synchronized long latencyMicros() {
+            return (long) Math.exp(mMu + mSigma * mRandom.nextGaussian());
+        }
+
+        synchronized boolean fails() {
+            return mRandom.nextDouble() < mErrorRate;
+        }
+    }
+
+    /**
+     * @return the status of the {@link PaymentException} {@code error} carries, in words.
+     */
+    private static String outcome(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        if (!(error instanceof PaymentException)) return String.valueOf(error);
+        return status(((PaymentException) error).getStatusCode());
+    }
+
+    private static String status(int statusCode) {
+        switch (statusCode) {
+            case WalletClient.STATUS_TIMEOUT:
+                return "timeout";
+            case SimulatedWalletClient.STATUS_NETWORK_ERROR:
+                return "network error";
+            case SimulatedWalletClient.STATUS_INTERNAL_ERROR:
+                return "internal error";
+            case SimulatedWalletClient.STATUS_DEVELOPER_ERROR:
+                return "developer error";
+            default:
+                return "status " + statusCode;
+        }
+    }
+
+    /**
+     * {@code name=value} options, each with its default.
+     */
+    private static final class Options {
+        private final Map<String, String> mValues = new LinkedHashMap<>();
+
+        Options() {
+            mValues.put("sessions", "20000");
+            mValues.put("concurrency", "2000");
+            mValues.put("threads", "4");
+            mValues.put("seed", "1");
+            mValues.put("maxLines", "5");
+            mValues.put("readinessMedian", "20");
+            mValues.put("readinessP99", "200");
+            mValues.put("readinessTtl", String.valueOf(ReadinessCache.DEFAULT_TTL_MILLIS));
+            mValues.put("readinessDeadline", "3000");
+            mValues.put("paymentMedian", "150");
+            mValues.put("paymentP99", "1500");
+            mValues.put("cancelRate", "0.1");
+            mValues.put("networkErrorRate", "0.01");
+            mValues.put("internalErrorRate", "0.002");
+            mValues.put("gateways", "fast:60:0.002,steady:90:0.002,flaky:40:0.3");
+            mValues.put("gatewayOpenPeriod", "1000");
+        }
+
+        void parse(String[] args) {
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                String name = equals < 0 ? arg : arg.substring(0, equals);
+                if (equals < 0 || !mValues.containsKey(name)) throw new IllegalArgumentException("Unknown option " + arg);
+                mValues.put(name, arg.substring(equals + 1));
+            }
+        }
+
+        String getString(String name) {
+            return mValues.get(name);
+        }
+
+        int getInt(String name) {
+            return Integer.parseInt(mValues.get(name));
+        }
+
+        long getLong(String name) {
+            return Long.parseLong(mValues.get(name));
+        }
+
+        long getMicros(String name) {
+            return Math.max(1, (long) (getDouble(name) * 1000));
+        }
+
+        double getDouble(String name) {
+            return Double.parseDouble(mValues.get(name));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            for (Map.Entry<String, String> option : mValues.entrySet()) {
+                if (out.length() > 0) out.append(' ');
+                out.append(option.getKey()).append('=').append(option.getValue());
+            }
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.google.android.gms.samples.wallet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shopping cart with its totals kept up to date on every change.
+ * <p>
+ * Adding, removing or changing the quantity of a line adjusts the running subtotal in micros, so
+ * no change walks the cart. The TransactionInfo with its {@code displayItems} is serialized on
+ * first use after a change: every line caches its own display item, so only changed lines are
+ * written again.
+ * <p>
+ * Not thread-safe. Take {@link #getTransactionInfo()} on the thread that owns the cart and hand
+ * the String on.
+ */
+public final class Cart {
+    private static final long BASIS_POINTS = 10000L;
+
+    private final PayUtils.TypeCurrency mCurrency;
+    private final long mMinorUnitMicros;
+    private final Map<String, Line> mLines = new LinkedHashMap<>();
+
+    private long mSubtotalMicros;
+    private long mTaxBasisPoints;
+    private long mTaxMicros;
+    private boolean mTaxPending;
+    private long mShippingMicros;
+    private boolean mShippingPending;
+    private long mDiscountMicros;
+    private String mTransactionInfo;
+
+    public Cart(PayUtils.TypeCurrency currency) {
+        mCurrency = currency;
+        mMinorUnitMicros = Money.ofMinorUnits(1, currency).getMicros();
+    }
+
+    public PayUtils.TypeCurrency getCurrency() {
+        return mCurrency;
+    }
+
+    /**
+     * Adds {@code quantity} of an item, or more of it when {@code id} is already in the cart.
+     */
+    public Cart add(String id, String label, Money unitPrice, int quantity) {
+        checkCurrency(unitPrice);
+        Line line = mLines.get(id);
+        if (line == null) {
+            line = new Line(label, unitPrice.getMicros());
+            mLines.put(id, line);
+        } else if (line.mUnitMicros != unitPrice.getMicros() || !line.mLabel.equals(label)) {
+            throw new IllegalArgumentException("Line " + id + " is already in the cart with another label or price");
+        }
+        return setQuantity(id, line, Math.addExact(line.mQuantity, quantity));
+    }
+
+    /**
+     * Sets the quantity of a line in the cart, zero removes it.
+     */
+    public Cart setQuantity(String id, int quantity) {
+        Line line = mLines.get(id);
+        if (line == null) throw new IllegalArgumentException("No line " + id + " in the cart");
+        return setQuantity(id, line, quantity);
+    }
+
+    public Cart remove(String id) {
+        Line line = mLines.get(id);
+        return line == null ? this : setQuantity(id, line, 0);
+    }
+
+    public int getQuantity(String id) {
+        Line line = mLines.get(id);
+        return line == null ? 0 : line.mQuantity;
+    }
+
+    public int getLineCount() {
+        return mLines.size();
+    }
+
+    /**
+     * Tax on the subtotal, e.g. 825 for 8.25%. It is rounded to the minor unit of the currency.
+     *
+     * @param pending true while the rate is an estimate, which makes the total ESTIMATED.
+     */
+    public Cart setTaxRate(long basisPoints, boolean pending) {
+        if (basisPoints < 0) throw new IllegalArgumentException("Negative tax rate: " + basisPoints);
+        mTaxBasisPoints = basisPoints;
+        mTaxPending = pending;
+        updateTax();
+        return changed();
+    }
+
+    /**
+     * @param pending true while the shipping cost is an estimate, which makes the total ESTIMATED.
+     */
+    public Cart setShipping(Money shipping, boolean pending) {
+        checkCurrency(shipping);
+        mShippingMicros = shipping.getMicros();
+        mShippingPending = pending;
+        return changed();
+    }
+
+    /**
+     * Amount taken off the total, as a positive amount.
+     */
+    public Cart setDiscount(Money discount) {
+        checkCurrency(discount);
+        if (discount.getMicros() < 0) throw new IllegalArgumentException("Negative discount: " + discount);
+        mDiscountMicros = discount.getMicros();
+        return changed();
+    }
+
+    public Money getSubtotal() {
+        return Money.ofMicros(mSubtotalMicros, mCurrency);
+    }
+
+    public Money getTax() {
+        return Money.ofMicros(mTaxMicros, mCurrency);
+    }
+
+    public Money getShipping() {
+        return Money.ofMicros(mShippingMicros, mCurrency);
+    }
+
+    public Money getDiscount() {
+        return Money.ofMicros(mDiscountMicros, mCurrency);
+    }
+
+    public Money getTotal() {
+        return Money.ofMicros(totalMicros(), mCurrency);
+    }
+
+    /**
+     * @return true when the total may still change, because tax or shipping is pending.
+     */
+    public boolean isEstimated() {
+        return mTaxPending || mShippingPending;
+    }
+
+    /**
+     * @return the serialized TransactionInfo with {@code displayItems}, {@code totalPriceStatus},
+     *     {@code totalPrice} and {@code currencyCode}, cached until the next change.
+     */
+    public String getTransactionInfo() {
+        String transactionInfo = mTransactionInfo;
+        if (transactionInfo == null) mTransactionInfo = transactionInfo = writeTransactionInfo();
+        return transactionInfo;
+    }
+
+    private Cart setQuantity(String id, Line line, int quantity) {
+        if (quantity < 0) throw new IllegalArgumentException("Negative quantity: " + quantity);
+        long lineMicros = Math.multiplyExact(line.mUnitMicros, (long) quantity);
+        mSubtotalMicros = Math.addExact(mSubtotalMicros - line.mLineMicros, lineMicros);
+        line.mQuantity = quantity;
+        line.mLineMicros = lineMicros;
+        line.mDisplayItem = null;
+        if (quantity == 0) mLines.remove(id);
+        updateTax();
+        return changed();
+    }
+
+    private void updateTax() {
+        if (mTaxBasisPoints == 0) {
+            mTaxMicros = 0;
+            return;
+        }
+        long divisor = Math.multiplyExact(BASIS_POINTS, mMinorUnitMicros);
+        long scaled = Math.multiplyExact(mSubtotalMicros, mTaxBasisPoints);
+        long minor = scaled / divisor;
+        if (Math.abs(scaled % divisor) * 2 >= divisor) minor += Long.signum(scaled);
+        mTaxMicros = minor * mMinorUnitMicros;
+    }
+
+    private long totalMicros() {
+        return Math.subtractExact(Math.addExact(Math.addExact(mSubtotalMicros, mTaxMicros), mShippingMicros), mDiscountMicros);
+    }
+
+    private Cart changed() {
+        mTransactionInfo = null;
+        return this;
+    }
+
+    private String writeTransactionInfo() {
+        // The display items share the per-thread writer, so they are written before the transaction.
+        StringBuilder displayItems = new StringBuilder(64 * (mLines.size() + 4)).append('[');
+        for (Line line : mLines.values()) {
+            if (displayItems.length() > 1) displayItems.append(',');
+            displayItems.append(line.displayItem(mCurrency));
+        }
+        if (!mLines.isEmpty()) {
+            appendDisplayItem(displayItems, "Subtotal", "SUBTOTAL", mSubtotalMicros, false);
+        }
+        if (mTaxBasisPoints != 0 || mTaxPending) {
+            appendDisplayItem(displayItems, "Tax", "TAX", mTaxMicros, mTaxPending);
+        }
+        if (mShippingMicros != 0 || mShippingPending) {
+            appendDisplayItem(displayItems, "Shipping", "LINE_ITEM", mShippingMicros, mShippingPending);
+        }
+        if (mDiscountMicros != 0) {
+            appendDisplayItem(displayItems, "Discount", "LINE_ITEM", -mDiscountMicros, false);
+        }
+        displayItems.append(']');
+
+        return RequestWriter.obtain()
+                .beginObject()
+                .name("displayItems").rawValue(displayItems)
+                .name("totalPriceStatus").value(isEstimated() ? "ESTIMATED" : "FINAL")
+                .name("totalPrice").value(Money.ofMicros(totalMicros(), mCurrency).toDecimalString())
+                .name("currencyCode").value(mCurrency.getCode())
+                .endObject()
+                .toString();
+    }
+
+    private void appendDisplayItem(StringBuilder out, String label, String type, long micros, boolean pending) {
+        if (out.length() > 1) out.append(',');
+        out.append(writeDisplayItem(label, type, Money.ofMicros(micros, mCurrency), pending));
+    }
+
+    private static String writeDisplayItem(String label, String type, Money price, boolean pending) {
+        RequestWriter writer = RequestWriter.obtain()
+                .beginObject()
+                .name("label").value(label)
+                .name("type").value(type)
+                .name("price").value(price.toDecimalString());
+        if (pending) writer.name("status").value("PENDING");
+        return writer.endObject().toString();
+    }
+
+    private void checkCurrency(Money money) {
+        if (money.getCurrency() != mCurrency) {
+            throw new IllegalArgumentException("Currency mismatch: " + mCurrency + " vs " + money.getCurrency());
+        }
+    }
+
+    private static final class Line {
+        final String mLabel;
+        final long mUnitMicros;
+        int mQuantity;
+        long mLineMicros;
+        String mDisplayItem;
+
+        Line(String label, long unitMicros) {
+            mLabel = label;
+            mUnitMicros = unitMicros;
+        }
+
+        String displayItem(PayUtils.TypeCurrency currency) {
+            String displayItem = mDisplayItem;
+            if (displayItem == null) {
+                String label = mQuantity == 1 ? mLabel : mLabel + " x " + mQuantity;
+                mDisplayItem = displayItem = writeDisplayItem(label, "LINE_ITEM", Money.ofMicros(mLineMicros, currency), false);
+            }
+            return displayItem;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.google.android.gms.samples.wallet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Read-only product catalog in the binary format written by {@code CatalogConverter} in payments-tools.
+ * <p>
+ * The file is a 16 byte header, a table of fixed-size entries sorted by SKU, then the UTF-8 text
+ * the entries point into:
+ * <pre>
+ * header: int magic 'GPCT', int version, int count, int reserved
+ * entry:  int skuOffset, short skuLength, short nameLength, int nameOffset,
+ *         int imageOffset, short imageLength, byte[3] currency, byte[3] reserved, long priceMicros
+ * </pre>
+ * All values are big-endian and all offsets are from the start of the file. The catalog is read in
+ * place from a mapped buffer, so opening it does not parse anything and {@link #indexOf} does a
+ * binary search over the entries without allocating. Text is decoded only when asked for.
+ * Instances only use absolute reads and can be shared between threads.
+ */
+public final class Catalog {
+    static final int MAGIC = 0x47504354;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 32;
+
+    static final int SKU_OFFSET = 0;
+    static final int SKU_LENGTH = 4;
+    static final int NAME_LENGTH = 6;
+    static final int NAME_OFFSET = 8;
+    static final int IMAGE_OFFSET = 12;
+    static final int IMAGE_LENGTH = 16;
+    static final int CURRENCY = 18;
+    static final int PRICE = 24;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+
+    private Catalog(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (mBuffer.capacity() < HEADER_SIZE || mBuffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a catalog");
+        }
+        if (mBuffer.getInt(4) != VERSION) throw new IOException("Unsupported catalog version " + mBuffer.getInt(4));
+        mCount = mBuffer.getInt(8);
+        if (mCount < 0 || HEADER_SIZE + (long) mCount * ENTRY_SIZE > mBuffer.capacity()) {
+            throw new IOException("Truncated catalog");
+        }
+    }
+
+    /**
+     * @param buffer the whole catalog, positioned at its start.
+     */
+    public static Catalog wrap(ByteBuffer buffer) throws IOException {
+        return new Catalog(buffer.slice());
+    }
+
+    public static Catalog open(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return wrap(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length()));
+        } finally {
+            in.close();
+        }
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @return the index of the item with this SKU, or -1 when there is none.
+     */
+    public int indexOf(CharSequence sku) {
+        int low = 0;
+        int high = mCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareSku(mid, sku);
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    public String getSku(int index) {
+        int entry = entry(index);
+        return text(mBuffer.getInt(entry + SKU_OFFSET), mBuffer.getShort(entry + SKU_LENGTH) & 0xFFFF);
+    }
+
+    public String getName(int index) {
+        int entry = entry(index);
+        return text(mBuffer.getInt(entry + NAME_OFFSET), mBuffer.getShort(entry + NAME_LENGTH) & 0xFFFF);
+    }
+
+    /**
+     * @return name of the item's image, e.g. a drawable resource name.
+     */
+    public String getImage(int index) {
+        int entry = entry(index);
+        return text(mBuffer.getInt(entry + IMAGE_OFFSET), mBuffer.getShort(entry + IMAGE_LENGTH) & 0xFFFF);
+    }
+
+    public long getPriceMicros(int index) {
+        return mBuffer.getLong(entry(index) + PRICE);
+    }
+
+    public PayUtils.TypeCurrency getCurrency(int index) {
+        int entry = entry(index) + CURRENCY;
+        return PayUtils.TypeCurrency.fromCode(
+                (char) mBuffer.get(entry), (char) mBuffer.get(entry + 1), (char) mBuffer.get(entry + 2));
+    }
+
+    public Money getPrice(int index) {
+        return Money.ofMicros(getPriceMicros(index), getCurrency(index));
+    }
+
+    private int entry(int index) {
+        if (index < 0 || index >= mCount) throw new IndexOutOfBoundsException("index " + index + ", size " + mCount);
+        return HEADER_SIZE + index * ENTRY_SIZE;
+    }
+
+    /**
+     * Compares the SKU bytes of an entry with {@code sku}. SKUs are ASCII, so bytes and chars
+     * compare the same way.
+     */
+    private int compareSku(int index, CharSequence sku) {
+        int entry = HEADER_SIZE + index * ENTRY_SIZE;
+        int offset = mBuffer.getInt(entry + SKU_OFFSET);
+        int length = mBuffer.getShort(entry + SKU_LENGTH) & 0xFFFF;
+        int other = sku.length();
+        int n = Math.min(length, other);
+        for (int i = 0; i < n; i++) {
+            int cmp = (mBuffer.get(offset + i) & 0xFF) - sku.charAt(i);
+            if (cmp != 0) return cmp;
+        }
+        return length - other;
+    }
+
+    private String text(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer in = mBuffer.duplicate();
+        in.position(offset);
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
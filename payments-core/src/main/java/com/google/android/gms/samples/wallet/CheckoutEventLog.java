@@ -0,0 +1,271 @@
+package com.google.android.gms.samples.wallet;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured log of checkout stage outcomes, kept on disk for offline analysis with
+ * {@code CheckoutEventDecoder} in payments-tools.
+ * <p>
+ * Events go into a preallocated ring of fixed-size records. Recording claims a slot with a CAS,
+ * writes three longs and publishes the slot, so it neither allocates nor blocks; when the ring is
+ * full the event is dropped and counted instead. A background thread wakes every flush interval
+ * and appends everything published so far to the log file in one write. Once the file reaches its
+ * size limit it is rotated: {@code file} becomes {@code file.1}, {@code file.1} becomes
+ * {@code file.2} and so on, up to the number of files kept. An existing file of another version or
+ * record size is never overwritten: it is moved aside to {@code file.incompatible-<time>}, where
+ * the decoder of its own version can still read it.
+ * <p>
+ * A file is a 16-byte header, {@code [magic][version][record size][reserved]}, followed by
+ * big-endian records of {@link #RECORD_SIZE} bytes:
+ * <pre>
+ * 0  wall clock time, milliseconds since the epoch (long)
+ * 8  duration of the stage in microseconds (long)
+ * 16 status code (int), 0 on success
+ * 20 reserved (short)
+ * 22 {@link CheckoutMetrics.Stage} ordinal (byte)
+ * 23 {@link Outcome} ordinal (byte)
+ * </pre>
+ * New stages and outcomes are only ever appended, so older files keep decoding.
+ */
+public final class CheckoutEventLog implements Closeable {
+    public enum Outcome {
+        SUCCESS, CANCELED, FAILURE
+    }
+
+    static final int MAGIC = 0x47504556; // "GPEV"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 24;
+    private static final int SLOT_LONGS = RECORD_SIZE / 8;
+    private static final int MAX_BATCH_RECORDS = 512;
+
+    private final long[] mRecords;
+    private final AtomicLongArray mPublished;
+    private final int mMask;
+    private final AtomicLong mClaimed = new AtomicLong();
+    private volatile long mFlushed;
+    private final AtomicLong mDropped = new AtomicLong();
+
+    private final File mFile;
+    private final long mMaxFileBytes;
+    private final int mMaxFiles;
+    private final long mFlushIntervalNanos;
+    private final Thread mWriter;
+    private volatile boolean mClosed;
+
+    // Owned by the writer thread.
+    private final ByteBuffer mBatch = ByteBuffer.allocateDirect(MAX_BATCH_RECORDS * RECORD_SIZE);
+    private FileChannel mChannel;
+
+    /**
+     * Starts the writer thread. The file is opened on that thread, never on the caller's.
+     *
+     * @param capacity events the ring holds between flushes, rounded up to a power of two.
+     * @param maxFileBytes size at which the file is rotated.
+     * @param maxFiles how many files are kept, counting the one being written.
+     */
+    public CheckoutEventLog(File file, int capacity, long maxFileBytes, int maxFiles, long flushIntervalMillis) {
+        if (capacity < 1 || capacity > 1 << 24) throw new IllegalArgumentException("capacity out of [1, 2^24]: " + capacity);
+        if (maxFiles < 1) throw new IllegalArgumentException("maxFiles < 1");
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) slots <<= 1;
+        mRecords = new long[slots * SLOT_LONGS];
+        mPublished = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            mPublished.set(i, -1L);
+        }
+        mMask = slots - 1;
+        mFile = file;
+        mMaxFileBytes = Math.max(maxFileBytes, HEADER_SIZE + RECORD_SIZE);
+        mMaxFiles = maxFiles;
+        mFlushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "CheckoutEventLog");
+        mWriter.setDaemon(true);
+        mWriter.setPriority(Thread.MIN_PRIORITY);
+        mWriter.start();
+    }
+
+    /**
+     * Records an event from any thread, without allocating or blocking.
+     *
+     * @param statusCode the wallet status of a failure, 0 on success.
+     */
+    public void record(CheckoutMetrics.Stage stage, Outcome outcome, int statusCode, long durationMicros) {
+        long sequence;
+        do {
+            sequence = mClaimed.get();
+            if (sequence - mFlushed > mMask || mClosed) {
+                mDropped.incrementAndGet();
+                return;
+            }
+        } while (!mClaimed.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & mMask;
+        int base = slot * SLOT_LONGS;
+        mRecords[base] = System.currentTimeMillis();
+        mRecords[base + 1] = durationMicros;
+        mRecords[base + 2] = (long) statusCode << 32 | stage.ordinal() << 8 | outcome.ordinal();
+        // Release store: the consumer reads the slot only after it sees this sequence.
+        mPublished.lazySet(slot, sequence);
+    }
+
+    /**
+     * @return events dropped because the ring was full, a write failed, or they were recorded
+     *     while the log was closing.
+     */
+    public long getDropped() {
+        return mDropped.get();
+    }
+
+    /**
+     * Stops the writer after a last flush of everything recorded so far.
+     */
+    @Override
+    public void close() throws IOException {
+        mClosed = true;
+        LockSupport.unpark(mWriter);
+        try {
+            mWriter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (!mClosed) {
+                LockSupport.parkNanos(this, mFlushIntervalNanos);
+                drain();
+            }
+            drain();
+            // Producers that passed the closed check before close() may still claim slots, and a
+            // slot claimed but not yet published stops the last drain. Shut out further claims and
+            // count everything not flushed, rather than lose it without a trace.
+            long claimed = mClaimed.getAndSet(Long.MAX_VALUE);
+            mDropped.addAndGet(claimed - mFlushed);
+        } finally {
+            closeChannel();
+        }
+    }
+
+    private void drain() {
+        long next = mFlushed;
+        long claimed = mClaimed.get();
+        while (next < claimed) {
+            mBatch.clear();
+            boolean stalled = false;
+            while (next < claimed && mBatch.hasRemaining()) {
+                int slot = (int) next & mMask;
+                if (mPublished.get(slot) != next) {
+                    // Claimed but still being written, picked up on the next flush.
+                    stalled = true;
+                    break;
+                }
+                int base = slot * SLOT_LONGS;
+                mBatch.putLong(mRecords[base]).putLong(mRecords[base + 1]).putLong(mRecords[base + 2]);
+                next++;
+            }
+            // The records are copied out, producers may reuse their slots.
+            mFlushed = next;
+            mBatch.flip();
+            write(mBatch);
+            if (stalled) return;
+        }
+    }
+
+    private void write(ByteBuffer batch) {
+        int records = batch.remaining() / RECORD_SIZE;
+        if (records == 0) return;
+        try {
+            if (mChannel == null) mChannel = openChannel();
+            if (mChannel.size() + batch.remaining() > mMaxFileBytes) {
+                closeChannel();
+                rotate();
+                mChannel = openChannel();
+            }
+            while (batch.hasRemaining()) mChannel.write(batch);
+        } catch (IOException e) {
+            closeChannel();
+            mDropped.addAndGet(records);
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        FileChannel channel = new RandomAccessFile(mFile, "rw").getChannel();
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (size >= HEADER_SIZE) {
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() == MAGIC && header.getInt() == VERSION && header.getInt() == RECORD_SIZE) {
+                // Drop a torn record left by a crash mid-write.
+                channel.truncate(size - (size - HEADER_SIZE) % RECORD_SIZE);
+                channel.position(channel.size());
+                return channel;
+            }
+            channel.close();
+            File aside = new File(mFile.getPath() + ".incompatible-" + System.currentTimeMillis());
+            if (!mFile.renameTo(aside)) throw new IOException("Cannot move " + mFile + " aside to " + aside);
+            channel = new RandomAccessFile(mFile, "rw").getChannel();
+            header.clear();
+        }
+        // New, or holding no more than a header torn by a crash while it was created.
+        channel.truncate(0);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0).flip();
+        while (header.hasRemaining()) channel.write(header);
+        return channel;
+    }
+
+    private void rotate() {
+        File oldest = rotated(mMaxFiles - 1);
+        if (oldest.exists()) oldest.delete();
+        for (int i = mMaxFiles - 2; i >= 0; i--) {
+            File from = rotated(i);
+            if (from.exists()) from.renameTo(rotated(i + 1));
+        }
+    }
+
+    private File rotated(int index) {
+        return index == 0 ? mFile : new File(mFile.getPath() + "." + index);
+    }
+
+    private void closeChannel() {
+        if (mChannel == null) return;
+        try {
+            mChannel.close();
+        } catch (IOException ignored) {
+            // Nothing left to lose, the records were already written or counted as dropped.
+        }
+        mChannel = null;
+    }
+
+    /**
+     * @return the log files of {@code file}, oldest first, as {@code CheckoutEventDecoder} reads them.
+     */
+    public static List<File> files(File file) {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            File rotated = i == 0 ? file : new File(file.getPath() + "." + i);
+            if (!rotated.exists()) break;
+            files.add(rotated);
+        }
+        Collections.reverse(files);
+        return files;
+    }
+}
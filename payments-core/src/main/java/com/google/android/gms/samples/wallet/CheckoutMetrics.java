@@ -0,0 +1,210 @@
+package com.google.android.gms.samples.wallet;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and outcome of each stage of the checkout flow.
+ * <p>
+ * A stage is timed with {@link #start()} and closed with {@link #success} or {@link #failure}.
+ * Latencies are kept in microseconds. With an event log set, every closed stage is also written to
+ * it as one record. Metrics are off and no log is set by default; then {@link #start()} returns 0
+ * and the closing calls return immediately, so the flow only pays for two volatile reads per stage.
+ */
+public final class CheckoutMetrics {
+    public enum Stage {
+        /** Creating the wallet client, including the PaymentsClient lookup. */
+        CLIENT_CREATE,
+        /** Serializing the PaymentDataRequest. */
+        REQUEST_BUILD,
+        /** {@code IsReadyToPayRequest.fromJson}. */
+        READY_REQUEST_PARSE,
+        /** {@code PaymentDataRequest.fromJson}. */
+        PAYMENT_REQUEST_PARSE,
+        /** The isReadyToPay call, request parsing included, until its result is delivered. */
+        IS_READY_TO_PAY,
+        /**
+         * loadPaymentData, request parsing included, from showing the sheet until the result
+         * comes back.
+         */
+        LOAD_PAYMENT_DATA,
+        /** Extracting the token from the PaymentData JSON. */
+        TOKEN_PARSE,
+        /**
+         * The readiness answer the checkout screen waits for, cached, joined or fresh, until it
+         * arrives or the readiness deadline fails it with {@link WalletClient#STATUS_TIMEOUT}. The
+         * isReadyToPay call itself is {@link #IS_READY_TO_PAY}.
+         */
+        READINESS_DEADLINE,
+        /**
+         * Time to button: from the creation of the checkout screen until it shows the Google Pay
+         * button or the unavailable notice, with a client created on the spot.
+         */
+        TIME_TO_BUTTON_COLD,
+        /** Time to button, as {@link #TIME_TO_BUTTON_COLD}, with a client warmed up in advance. */
+        TIME_TO_BUTTON_PREWARMED
+    }
+
+    private static volatile boolean sEnabled;
+    private static volatile CheckoutEventLog sEventLog;
+
+    private static final EnumMap<Stage, StageMetrics> sStages = new EnumMap<>(Stage.class);
+
+    static {
+        for (Stage stage : Stage.values()) {
+            sStages.put(stage, new StageMetrics());
+        }
+    }
+
+    private CheckoutMetrics() {}
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Records every closed stage to {@code eventLog} from now on, whether or not metrics are
+     * enabled; {@code null} stops recording. The previous log is not closed.
+     */
+    public static void setEventLog(CheckoutEventLog eventLog) {
+        sEventLog = eventLog;
+    }
+
+    /**
+     * @return the start time to pass on to {@link #success} or {@link #failure}, or 0 when
+     *     metrics are disabled and no event log is set.
+     */
+    public static long start() {
+        return sEnabled || sEventLog != null ? System.nanoTime() | 1L : 0L;
+    }
+
+    public static void success(Stage stage, long start) {
+        if (start == 0L) return;
+        long elapsed = elapsedMicros(start);
+        CheckoutEventLog eventLog = sEventLog;
+        if (eventLog != null) eventLog.record(stage, CheckoutEventLog.Outcome.SUCCESS, 0, elapsed);
+        if (!sEnabled) return;
+        StageMetrics metrics = sStages.get(stage);
+        metrics.latency.record(elapsed);
+        metrics.successes.incrementAndGet();
+    }
+
+    /**
+     * Records a failed stage. {@link WalletClient#STATUS_CANCELED} is counted as a cancel, any
+     * other status as an error under that status code.
+     */
+    public static void failure(Stage stage, long start, int statusCode) {
+        if (start == 0L) return;
+        long elapsed = elapsedMicros(start);
+        boolean canceled = statusCode == WalletClient.STATUS_CANCELED;
+        CheckoutEventLog eventLog = sEventLog;
+        if (eventLog != null) {
+            eventLog.record(stage, canceled ? CheckoutEventLog.Outcome.CANCELED : CheckoutEventLog.Outcome.FAILURE,
+                    statusCode, elapsed);
+        }
+        if (!sEnabled) return;
+        StageMetrics metrics = sStages.get(stage);
+        metrics.latency.record(elapsed);
+        if (canceled) {
+            metrics.cancels.incrementAndGet();
+            return;
+        }
+        AtomicLong errors = metrics.errors.get(statusCode);
+        if (errors == null) {
+            AtomicLong created = new AtomicLong();
+            errors = metrics.errors.putIfAbsent(statusCode, created);
+            if (errors == null) errors = created;
+        }
+        errors.incrementAndGet();
+    }
+
+    public static Map<Stage, StageSnapshot> snapshot() {
+        EnumMap<Stage, StageSnapshot> snapshot = new EnumMap<>(Stage.class);
+        for (Map.Entry<Stage, StageMetrics> entry : sStages.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshot;
+    }
+
+    public static void reset() {
+        for (StageMetrics metrics : sStages.values()) {
+            metrics.latency.reset();
+            metrics.successes.set(0);
+            metrics.cancels.set(0);
+            metrics.errors.clear();
+        }
+    }
+
+    private static long elapsedMicros(long start) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+
+    private static final class StageMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong successes = new AtomicLong();
+        final AtomicLong cancels = new AtomicLong();
+        final ConcurrentMap<Integer, AtomicLong> errors = new ConcurrentHashMap<>();
+
+        StageSnapshot snapshot() {
+            Map<Integer, Long> errorCounts = new HashMap<>();
+            for (Map.Entry<Integer, AtomicLong> entry : errors.entrySet()) {
+                errorCounts.put(entry.getKey(), entry.getValue().get());
+            }
+            return new StageSnapshot(latency.snapshot(), successes.get(), cancels.get(), errorCounts);
+        }
+    }
+
+    public static final class StageSnapshot {
+        private final LatencyHistogram.Snapshot mLatency;
+        private final long mSuccesses;
+        private final long mCancels;
+        private final Map<Integer, Long> mErrors;
+
+        private StageSnapshot(LatencyHistogram.Snapshot latency, long successes, long cancels, Map<Integer, Long> errors) {
+            mLatency = latency;
+            mSuccesses = successes;
+            mCancels = cancels;
+            mErrors = errors;
+        }
+
+        /**
+         * Latencies in microseconds.
+         */
+        public LatencyHistogram.Snapshot getLatency() {
+            return mLatency;
+        }
+
+        public long getSuccesses() {
+            return mSuccesses;
+        }
+
+        public long getCancels() {
+            return mCancels;
+        }
+
+        /**
+         * Error counts by status code.
+         */
+        public Map<Integer, Long> getErrors() {
+            return mErrors;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + mLatency.getCount()
+                    + " p50=" + mLatency.getValueAtPercentile(50) + "us"
+                    + " p99=" + mLatency.getValueAtPercentile(99) + "us"
+                    + " max=" + mLatency.getMax() + "us"
+                    + " ok=" + mSuccesses + " canceled=" + mCancels + " errors=" + mErrors;
+        }
+    }
+}
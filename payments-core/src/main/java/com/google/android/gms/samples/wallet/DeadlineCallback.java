@@ -0,0 +1,56 @@
+package com.google.android.gms.samples.wallet;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers at most one outcome to the wrapped callback: the result, a failure, or
+ * {@link WalletClient#STATUS_TIMEOUT} when the deadline passes first.
+ * <p>
+ * The deadline itself is scheduled by the caller on whatever timer fits its threading, a main
+ * thread Handler on Android or a ScheduledExecutorService on a server, by running this object when
+ * it expires. Anything arriving after the deadline or after {@link #cancel()} is dropped.
+ */
+public final class DeadlineCallback<T> implements WalletClient.Callback<T>, Runnable {
+    private final WalletClient.Callback<T> mCallback;
+    private final String mOperation;
+    private final AtomicBoolean mDone = new AtomicBoolean();
+
+    /**
+     * @param operation name of the call, used in the timeout message.
+     */
+    public DeadlineCallback(WalletClient.Callback<T> callback, String operation) {
+        mCallback = callback;
+        mOperation = operation;
+    }
+
+    @Override
+    public void onResult(T result) {
+        if (mDone.compareAndSet(false, true)) mCallback.onResult(result);
+    }
+
+    @Override
+    public void onFailure(int statusCode, String message) {
+        if (mDone.compareAndSet(false, true)) mCallback.onFailure(statusCode, message);
+    }
+
+    /**
+     * Expires the deadline.
+     */
+    @Override
+    public void run() {
+        onFailure(WalletClient.STATUS_TIMEOUT, mOperation + " timed out");
+    }
+
+    /**
+     * Drops whatever outcome comes later.
+     *
+     * @return false when an outcome was already delivered.
+     */
+    public boolean cancel() {
+        return mDone.compareAndSet(false, true);
+    }
+
+    public boolean isDone() {
+        return mDone.get();
+    }
+}
@@ -0,0 +1,282 @@
+package com.google.android.gms.samples.wallet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the payment gateway for each checkout from the results of earlier token submissions.
+ * <p>
+ * Every gateway keeps an exponentially weighted moving average of its submission latency and
+ * error rate. {@link #route()} returns the healthy gateway with the lowest average latency; a
+ * gateway without results yet is tried first, so a new one gets measured. A small share of
+ * checkouts goes to the healthy gateway routed to least recently instead, so the averages of
+ * gateways that lost traffic to an unlucky result keep being refreshed.
+ * <p>
+ * A gateway whose error rate reaches the failure threshold, once it has enough results, has its
+ * circuit opened: it gets no traffic for the open period. After that a single probe checkout is
+ * routed to it; a successful probe closes the circuit with fresh statistics, a failed one opens it
+ * again. When every circuit is open the gateway closest to its next probe is used rather than none.
+ * <p>
+ * Each gateway carries its own {@link PaymentConfig}, the base config with the gateway's
+ * tokenization parameters, so its PaymentDataRequest head with the
+ * {@code tokenizationSpecification} is serialized once and only the transaction is written per
+ * checkout. Thread-safe.
+ */
+public final class GatewayRouter {
+    public enum State {
+        /** Healthy, routed to by latency. */
+        CLOSED,
+        /** Failing, no traffic until the open period ends. */
+        OPEN,
+        /** Open period over, one probe checkout is let through. */
+        HALF_OPEN
+    }
+
+    private final List<Gateway> mGateways;
+    private final Map<String, Gateway> mByName = new LinkedHashMap<>();
+    private final double mAlpha;
+    private final double mFailureThreshold;
+    private final int mMinSamples;
+    private final long mOpenNanos;
+    private final int mExploreEvery;
+    private long mRoutes;
+
+    private GatewayRouter(Builder builder) {
+        if (builder.mGateways.isEmpty()) throw new IllegalStateException("No gateway added");
+        mGateways = Collections.unmodifiableList(new ArrayList<>(builder.mGateways));
+        for (Gateway gateway : mGateways) {
+            mByName.put(gateway.mName, gateway);
+        }
+        mAlpha = builder.mAlpha;
+        mFailureThreshold = builder.mFailureThreshold;
+        mMinSamples = builder.mMinSamples;
+        mOpenNanos = TimeUnit.MILLISECONDS.toNanos(builder.mOpenMillis);
+        mExploreEvery = builder.mExploration > 0 ? (int) Math.round(1 / builder.mExploration) : 0;
+    }
+
+    /**
+     * @return the gateway to tokenize the next checkout for. Report how its submission went with
+     *     {@link #recordSuccess} or {@link #recordFailure}.
+     */
+    public synchronized Gateway route() {
+        long now = System.nanoTime();
+        long route = ++mRoutes;
+        Gateway best = null;
+        Gateway stalest = null;
+        Gateway soonest = null;
+        for (Gateway gateway : mGateways) {
+            if (gateway.mState != State.CLOSED && now - gateway.mOpenedAt >= mOpenNanos) {
+                // The probe is due, or the previous probe never reported back.
+                gateway.mState = State.HALF_OPEN;
+                gateway.mOpenedAt = now;
+                return gateway;
+            }
+            if (gateway.mState != State.CLOSED) {
+                if (soonest == null || gateway.mOpenedAt - soonest.mOpenedAt < 0) soonest = gateway;
+                continue;
+            }
+            if (best == null || gateway.score() < best.score()) best = gateway;
+            if (stalest == null || gateway.mLastRoute < stalest.mLastRoute) stalest = gateway;
+        }
+        if (best == null) return soonest;
+        Gateway chosen = mExploreEvery > 0 && route % mExploreEvery == 0 ? stalest : best;
+        chosen.mLastRoute = route;
+        return chosen;
+    }
+
+    /**
+     * Records a submission the gateway accepted.
+     *
+     * @param gateway name of the gateway, as in the {@code gateway} tokenization parameter.
+     *     Unknown names, such as gateways dropped from the configuration, are ignored.
+     */
+    public synchronized void recordSuccess(String gateway, long latencyMicros) {
+        Gateway target = mByName.get(gateway);
+        if (target == null) return;
+        if (target.mState == State.HALF_OPEN) {
+            target.mState = State.CLOSED;
+            target.mSamples = 0;
+            target.mErrorRate = 0;
+        }
+        target.update(latencyMicros, 0, mAlpha);
+    }
+
+    /**
+     * Records a submission the gateway rejected or that did not reach it.
+     *
+     * @param gateway name of the gateway, as in the {@code gateway} tokenization parameter.
+     */
+    public synchronized void recordFailure(String gateway, long latencyMicros) {
+        Gateway target = mByName.get(gateway);
+        if (target == null) return;
+        target.update(latencyMicros, 1, mAlpha);
+        if (target.mState == State.HALF_OPEN
+                || (target.mState == State.CLOSED && target.mSamples >= mMinSamples && target.mErrorRate >= mFailureThreshold)) {
+            target.mState = State.OPEN;
+            target.mOpenedAt = System.nanoTime();
+        }
+    }
+
+    public List<Gateway> getGateways() {
+        return mGateways;
+    }
+
+    public Gateway getGateway(String name) {
+        return mByName.get(name);
+    }
+
+    public static final class Gateway {
+        private final String mName;
+        private final String mMerchantId;
+        private final PaymentConfig mConfig;
+
+        // Written under the router's lock, volatile for the getters.
+        private volatile State mState = State.CLOSED;
+        private long mOpenedAt;
+        private long mLastRoute;
+        private int mSamples;
+        private volatile double mLatencyMicros;
+        private volatile double mErrorRate;
+
+        Gateway(String name, String merchantId, PaymentConfig config) {
+            mName = name;
+            mMerchantId = merchantId;
+            mConfig = config;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String getMerchantId() {
+            return mMerchantId;
+        }
+
+        /**
+         * @return the store config with this gateway's tokenization parameters.
+         */
+        public PaymentConfig getConfig() {
+            return mConfig;
+        }
+
+        public State getState() {
+            return mState;
+        }
+
+        /**
+         * @return the average submission latency in microseconds, 0 before the first result.
+         */
+        public double getLatencyMicros() {
+            return mLatencyMicros;
+        }
+
+        /**
+         * @return the average share of failed submissions, between 0 and 1.
+         */
+        public double getErrorRate() {
+            return mErrorRate;
+        }
+
+        private double score() {
+            return mSamples == 0 ? -1 : mLatencyMicros;
+        }
+
+        private void update(long latencyMicros, int failed, double alpha) {
+            if (mSamples++ == 0) {
+                mLatencyMicros = latencyMicros;
+                mErrorRate = failed;
+            } else {
+                mLatencyMicros += alpha * (latencyMicros - mLatencyMicros);
+                mErrorRate += alpha * (failed - mErrorRate);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mName + " " + mState + " latency=" + Math.round(mLatencyMicros) + "us"
+                    + " errors=" + Math.round(mErrorRate * 100) + "%";
+        }
+    }
+
+    public static final class Builder {
+        private final PaymentConfig mBase;
+        private final List<Gateway> mGateways = new ArrayList<>();
+        private double mAlpha = 0.2;
+        private double mFailureThreshold = 0.5;
+        private int mMinSamples = 5;
+        private long mOpenMillis = TimeUnit.SECONDS.toMillis(30);
+        private double mExploration = 0.05;
+
+        /**
+         * @param base the store's config: merchant, cards and auth methods shared by all gateways.
+         * @throws IllegalArgumentException when {@code base} does not use
+         *     {@link PayUtils.Tokenization#PAYMENT_GATEWAY}: the gateway parameters would be added
+         *     to a direct tokenizationSpecification, which Google Pay rejects.
+         */
+        public Builder(PaymentConfig base) {
+            if (base.getTokenization() != PayUtils.Tokenization.PAYMENT_GATEWAY) {
+                throw new IllegalArgumentException("Gateways need PAYMENT_GATEWAY tokenization, not " + base.getTokenization());
+            }
+            mBase = base;
+        }
+
+        /**
+         * Adds a gateway. Gateways without results yet are tried in the order they were added.
+         */
+        public Builder addGateway(String gateway, String gatewayMerchantId) {
+            PaymentConfig config = mBase.toBuilder()
+                    .addParameter("gateway", gateway)
+                    .addParameter("gatewayMerchantId", gatewayMerchantId)
+                    .build();
+            // Serialize the request head with the tokenizationSpecification now, not on the first checkout.
+            config.getPaymentTemplate();
+            mGateways.add(new Gateway(gateway, gatewayMerchantId, config));
+            return this;
+        }
+
+        /**
+         * @param alpha weight of the newest result in the moving averages, between 0 and 1.
+         */
+        public Builder setSmoothing(double alpha) {
+            if (alpha <= 0 || alpha > 1) throw new IllegalArgumentException("alpha out of (0, 1]: " + alpha);
+            mAlpha = alpha;
+            return this;
+        }
+
+        /**
+         * Opens the circuit of a gateway once its average error rate reaches {@code errorRate},
+         * after at least {@code minSamples} results.
+         */
+        public Builder setFailureThreshold(double errorRate, int minSamples) {
+            mFailureThreshold = errorRate;
+            mMinSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * How long an open circuit gets no traffic before a probe.
+         */
+        public Builder setOpenPeriod(long millis) {
+            mOpenMillis = millis;
+            return this;
+        }
+
+        /**
+         * @param share of checkouts routed to the healthy gateway used least recently rather than
+         *     the fastest one, 0 to always pick the fastest.
+         */
+        public Builder setExploration(double share) {
+            if (share < 0 || share > 1) throw new IllegalArgumentException("share out of [0, 1]: " + share);
+            mExploration = share;
+            return this;
+        }
+
+        public GatewayRouter build() {
+            return new GatewayRouter(this);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.google.android.gms.samples.wallet;
+
+import java.text.ParseException;
+
+/**
+ * Forward-only pull scanner over a JSON document held in a String.
+ * <p>
+ * Values are read in place, so callers can pick the members they need and skip the rest without
+ * building a tree. Strings without escapes are returned as a single substring copy.
+ */
+final class JsonScanner {
+    static final char OBJECT = '{';
+    static final char ARRAY = '[';
+    static final char STRING = '"';
+    static final char NUMBER = '0';
+    static final char LITERAL = 't';
+    static final char END = 0;
+
+    private final String mIn;
+    private final int mLength;
+    private int mPos;
+
+    JsonScanner(String json) {
+        mIn = json;
+        mLength = json.length();
+    }
+
+    /**
+     * @return kind of the next value: {@link #OBJECT}, {@link #ARRAY}, {@link #STRING},
+     *     {@link #NUMBER}, {@link #LITERAL} (true, false or null) or {@link #END}.
+     */
+    char peek() {
+        skipWhitespace();
+        if (mPos >= mLength) return END;
+        char c = mIn.charAt(mPos);
+        switch (c) {
+            case '{': return OBJECT;
+            case '[': return ARRAY;
+            case '"': return STRING;
+            case 't': case 'f': case 'n': return LITERAL;
+            case '}': case ']': return END;
+            default: return NUMBER;
+        }
+    }
+
+    void beginObject() throws ParseException {
+        expect('{');
+    }
+
+    void endObject() throws ParseException {
+        expect('}');
+    }
+
+    void beginArray() throws ParseException {
+        expect('[');
+    }
+
+    void endArray() throws ParseException {
+        expect(']');
+    }
+
+    /**
+     * @return true when the current object or array has another member, consuming the separating
+     *     comma if there is one.
+     */
+    boolean hasNext() {
+        skipWhitespace();
+        if (mPos >= mLength) return false;
+        char c = mIn.charAt(mPos);
+        if (c == ',') {
+            mPos++;
+            skipWhitespace();
+            return true;
+        }
+        return c != '}' && c != ']';
+    }
+
+    String nextName() throws ParseException {
+        String name = readString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * @return the next string value, or null for a JSON {@code null}.
+     */
+    String nextString() throws ParseException {
+        skipWhitespace();
+        if (mIn.startsWith("null", mPos)) {
+            mPos += 4;
+            return null;
+        }
+        return readString();
+    }
+
+    boolean nextBoolean() throws ParseException {
+        skipWhitespace();
+        if (mIn.startsWith("true", mPos)) {
+            mPos += 4;
+            return true;
+        }
+        if (mIn.startsWith("false", mPos)) {
+            mPos += 5;
+            return false;
+        }
+        throw error("Expected boolean");
+    }
+
+    long nextLong() throws ParseException {
+        skipWhitespace();
+        int start = mPos;
+        boolean negative = start < mLength && mIn.charAt(start) == '-';
+        if (negative) mPos++;
+        long value = 0;
+        while (mPos < mLength) {
+            char c = mIn.charAt(mPos);
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+            mPos++;
+        }
+        if (mPos == start + (negative ? 1 : 0)) throw error("Expected number");
+        return negative ? -value : value;
+    }
+
+    void skipValue() throws ParseException {
+        switch (peek()) {
+            case OBJECT:
+            case ARRAY:
+                skipContainer();
+                break;
+            case STRING:
+                skipString();
+                break;
+            case END:
+                throw error("Expected value");
+            default:
+                while (mPos < mLength && ",}] \t\r\n".indexOf(mIn.charAt(mPos)) < 0) mPos++;
+        }
+    }
+
+    private void skipContainer() throws ParseException {
+        int depth = 0;
+        do {
+            char c = mIn.charAt(mPos);
+            if (c == '"') {
+                skipString();
+                continue;
+            }
+            if (c == '{' || c == '[') depth++;
+            else if (c == '}' || c == ']') depth--;
+            mPos++;
+        } while (depth > 0 && mPos < mLength);
+        if (depth > 0) throw error("Unterminated container");
+    }
+
+    private void skipString() throws ParseException {
+        mPos++;
+        while (mPos < mLength) {
+            char c = mIn.charAt(mPos++);
+            if (c == '\\') mPos++;
+            else if (c == '"') return;
+        }
+        throw error("Unterminated string");
+    }
+
+    private String readString() throws ParseException {
+        skipWhitespace();
+        if (mPos >= mLength || mIn.charAt(mPos) != '"') throw error("Expected string");
+        int start = ++mPos;
+        int end = start;
+        while (end < mLength) {
+            char c = mIn.charAt(end);
+            if (c == '"') {
+                mPos = end + 1;
+                return mIn.substring(start, end);
+            }
+            if (c == '\\') break;
+            end++;
+        }
+
+        StringBuilder out = new StringBuilder(end - start + 16);
+        out.append(mIn, start, end);
+        mPos = end;
+        while (mPos < mLength) {
+            char c = mIn.charAt(mPos++);
+            if (c == '"') return out.toString();
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            if (mPos >= mLength) break;
+            char escaped = mIn.charAt(mPos++);
+            switch (escaped) {
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                case 't': out.append('\t'); break;
+                case 'u':
+                    if (mPos + 4 > mLength) throw error("Truncated escape");
+                    int code = 0;
+                    for (int end4 = mPos + 4; mPos < end4; mPos++) {
+                        int digit = Character.digit(mIn.charAt(mPos), 16);
+                        if (digit < 0) throw error("Invalid escape");
+                        code = (code << 4) | digit;
+                    }
+                    out.append((char) code);
+                    break;
+                default: out.append(escaped);
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private void expect(char c) throws ParseException {
+        skipWhitespace();
+        if (mPos >= mLength || mIn.charAt(mPos) != c) throw error("Expected '" + c + "'");
+        mPos++;
+    }
+
+    private void skipWhitespace() {
+        while (mPos < mLength) {
+            char c = mIn.charAt(mPos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return;
+            mPos++;
+        }
+    }
+
+    private ParseException error(String message) {
+        return new ParseException(message + " at " + mPos, mPos);
+    }
+}
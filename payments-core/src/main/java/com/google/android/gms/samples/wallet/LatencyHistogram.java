@@ -0,0 +1,129 @@
+package com.google.android.gms.samples.wallet;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of non-negative values, in the style of HdrHistogram.
+ * <p>
+ * Every power of two is split into 32 linear sub-buckets, so a recorded value is off by at most
+ * about 3% of itself. Values below 2<sup>42</sup> are tracked, larger ones land in the last
+ * bucket. Recording is a few atomic increments and never allocates.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_SHIFT = 36;
+    private static final int BUCKET_COUNT = ((MAX_SHIFT + 1) << SUB_BUCKET_BITS) + SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mTotalCount = new AtomicLong();
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        mCounts.incrementAndGet(indexOf(value));
+        mTotalCount.incrementAndGet();
+        mTotal.addAndGet(value);
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotalCount.set(0);
+        mTotal.set(0);
+        mMax.set(0);
+    }
+
+    /**
+     * Copies the current counts. Values recorded while the copy is taken may or may not be part
+     * of it, but every bucket is read atomically.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long totalCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mCounts.get(i);
+            totalCount += counts[i];
+        }
+        return new Snapshot(counts, totalCount, mTotal.get(), mMax.get());
+    }
+
+    static int indexOf(long value) {
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        if (shift <= 0) return (int) value;
+        if (shift > MAX_SHIFT) return BUCKET_COUNT - 1;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    static long lowerBoundOf(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) return index;
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        return (long) ((index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT) << shift;
+    }
+
+    public static final class Snapshot {
+        private final long[] mCounts;
+        private final long mCount;
+        private final long mTotal;
+        private final long mMax;
+
+        private Snapshot(long[] counts, long count, long total, long max) {
+            mCounts = counts;
+            mCount = count;
+            mTotal = total;
+            mMax = max;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        public double getMean() {
+            return mCount == 0 ? 0 : (double) mTotal / mCount;
+        }
+
+        /**
+         * @param percentile between 0 and 100.
+         * @return the lower bound of the bucket holding the value at {@code percentile}, or 0 when
+         *     nothing was recorded.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (mCount == 0) return 0;
+            long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * mCount);
+            if (rank < 1) rank = 1;
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if (seen >= rank) return Math.min(lowerBoundOf(i), mMax);
+            }
+            return mMax;
+        }
+
+        /**
+         * Number of buckets, for exporting the raw distribution with {@link #getBucketLowerBound}
+         * and {@link #getBucketCount}.
+         */
+        public int getBucketCount() {
+            return mCounts.length;
+        }
+
+        public long getBucketLowerBound(int bucket) {
+            return lowerBoundOf(bucket);
+        }
+
+        public long getBucketCount(int bucket) {
+            return mCounts[bucket];
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.google.android.gms.samples.wallet;
+
+/**
+ * Fixed-point amount of money: a long count of micros (millionths of the major unit) plus the
+ * currency it is in.
+ * <p>
+ * Arithmetic stays on primitives and {@link #toDecimalString()} writes the decimal string Google
+ * Pay expects, with as many fraction digits as the ISO 4217 exponent of the currency.
+ */
+public final class Money {
+    public static final int MICROS_EXPONENT = 6;
+    private static final long[] POW10 = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L};
+
+    private final long mMicros;
+    private final PayUtils.TypeCurrency mCurrency;
+
+    private Money(long micros, PayUtils.TypeCurrency currency) {
+        if (currency == null) throw new NullPointerException("currency == null");
+        mMicros = micros;
+        mCurrency = currency;
+    }
+
+    public static Money ofMicros(long micros, PayUtils.TypeCurrency currency) {
+        return new Money(micros, currency);
+    }
+
+    public static Money ofMinorUnits(long minorUnits, PayUtils.TypeCurrency currency) {
+        return new Money(Math.multiplyExact(minorUnits, POW10[MICROS_EXPONENT - currency.getExponent()]), currency);
+    }
+
+    public static Money zero(PayUtils.TypeCurrency currency) {
+        return new Money(0, currency);
+    }
+
+    /**
+     * Parses a plain decimal amount such as {@code "30.00"} or {@code "-5"}.
+     *
+     * @throws NumberFormatException when the text is not a decimal number, overflows, or has more
+     *     fraction digits than the currency allows.
+     */
+    public static Money parse(CharSequence amount, PayUtils.TypeCurrency currency) {
+        int length = amount.length();
+        int i = 0;
+        boolean negative = length > 0 && amount.charAt(0) == '-';
+        if (negative) i++;
+        int exponent = currency.getExponent();
+        long micros = 0;
+        int integerDigits = 0;
+        int fractionDigits = -1;
+        for (; i < length; i++) {
+            char c = amount.charAt(i);
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') throw new NumberFormatException("Invalid amount: " + amount);
+            if (fractionDigits < 0) {
+                micros = Math.addExact(Math.multiplyExact(micros, 10L), (c - '0') * POW10[MICROS_EXPONENT]);
+                integerDigits++;
+            } else if (++fractionDigits > exponent) {
+                throw new NumberFormatException("Too many fraction digits for " + currency + ": " + amount);
+            } else {
+                micros = Math.addExact(micros, (c - '0') * POW10[MICROS_EXPONENT - fractionDigits]);
+            }
+        }
+        if (integerDigits == 0 && fractionDigits <= 0) throw new NumberFormatException("Invalid amount: " + amount);
+        return new Money(negative ? -micros : micros, currency);
+    }
+
+    public long getMicros() {
+        return mMicros;
+    }
+
+    public PayUtils.TypeCurrency getCurrency() {
+        return mCurrency;
+    }
+
+    /**
+     * @return the amount in minor units of the currency, rounded half away from zero.
+     */
+    public long toMinorUnits() {
+        long divisor = POW10[MICROS_EXPONENT - mCurrency.getExponent()];
+        long minor = mMicros / divisor;
+        long remainder = mMicros % divisor;
+        if (Math.abs(remainder) * 2 >= divisor) minor += Long.signum(remainder);
+        return minor;
+    }
+
+    public Money plus(Money other) {
+        checkCurrency(other);
+        return new Money(Math.addExact(mMicros, other.mMicros), mCurrency);
+    }
+
+    public Money minus(Money other) {
+        checkCurrency(other);
+        return new Money(Math.subtractExact(mMicros, other.mMicros), mCurrency);
+    }
+
+    public Money times(long quantity) {
+        return new Money(Math.multiplyExact(mMicros, quantity), mCurrency);
+    }
+
+    /**
+     * @return the amount as Google Pay expects it, e.g. {@code "30.00"}, {@code "3000"} for JPY or
+     *     {@code "1.500"} for KWD.
+     */
+    public String toDecimalString() {
+        int exponent = mCurrency.getExponent();
+        long minor = toMinorUnits();
+        boolean negative = minor < 0;
+        char[] digits = new char[22];
+        int pos = digits.length;
+        for (int i = 0; i < exponent; i++) {
+            digits[--pos] = (char) ('0' + Math.abs(minor % 10));
+            minor /= 10;
+        }
+        if (exponent > 0) digits[--pos] = '.';
+        do {
+            digits[--pos] = (char) ('0' + Math.abs(minor % 10));
+            minor /= 10;
+        } while (minor != 0);
+        if (negative) digits[--pos] = '-';
+        return new String(digits, pos, digits.length - pos);
+    }
+
+    private void checkCurrency(Money other) {
+        if (other.mCurrency != mCurrency) {
+            throw new IllegalArgumentException("Currency mismatch: " + mCurrency + " vs " + other.mCurrency);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Money)) return false;
+        Money money = (Money) o;
+        return mMicros == money.mMicros && mCurrency == money.mCurrency;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mCurrency.hashCode() + (int) (mMicros ^ (mMicros >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return toDecimalString() + " " + mCurrency.name();
+    }
+}
@@ -0,0 +1,166 @@
+package com.google.android.gms.samples.wallet;
+
+/**
+ * @author Kisarinov Konstantin on 30.04.19.
+ */
+public class PayUtils {
+    public enum TypeEnvironment{
+        TEST, PROD
+    }
+
+    public enum Cards{
+        AMEX, DISCOVER, JCB, MASTERCARD, VISA, INTERAC;
+
+        /**
+         * @return card network name as the Google Pay API v2 expects it in allowedCardNetworks.
+         */
+        public String getCardNetwork(){
+            return name();
+        }
+    }
+
+    /**
+     * How the payment credentials are tokenized: for a gateway, or encrypted for the merchant
+     * with the ECv2 protocol and decrypted by {@code PaymentTokenVerifier} in payments-tools.
+     */
+    public enum Tokenization{
+        PAYMENT_GATEWAY, DIRECT
+    }
+
+    public enum PayMethod{
+        CARDS, PAN_ONLY, TOKENIZED_CARD, CRYPTOGRAM_3DS;
+
+        /**
+         * @return auth method name as the Google Pay API v2 expects it in allowedAuthMethods.
+         */
+        public String getPayMethod(){
+            switch(this){
+                case TOKENIZED_CARD:
+                case CRYPTOGRAM_3DS: return "CRYPTOGRAM_3DS";
+            }
+            return "PAN_ONLY";
+        }
+    }
+
+    /**
+     * ISO 4217 currencies with their numeric code, minor unit exponent and display symbol.
+     */
+    public enum TypeCurrency{
+        AED(784, 2, "\u062f.\u0625."), ALL(8, 2, "Lek\u00eb"), AMD(51, 2, "\u058f"),
+        ANG(532, 2, "NAf."), AOA(973, 2, "Kz"), ARS(32, 2, "$"), AUD(36, 2, "$"),
+        AWG(533, 2, "Afl."), AZN(944, 2, "\u20bc"),
+        BAM(977, 2, "KM"), BBD(52, 2, "$"), BDT(50, 2, "\u09f3"), BGN(975, 2, "\u043b\u0432."),
+        BHD(48, 3, "\u062f.\u0628."), BMD(60, 2, "$"), BND(96, 2, "$"), BOB(68, 2, "Bs"),
+        BRL(986, 2, "R$"), BSD(44, 2, "$"), BWP(72, 2, "P"), BYN(933, 2, "Br"), BZD(84, 2, "$"),
+        CAD(124, 2, "$"), CHF(756, 2, "CHF"), CLP(152, 0, "$"), CNY(156, 2, "\u00a5"),
+        COP(170, 2, "$"), CRC(188, 2, "\u20a1"), CUP(192, 2, "$"), CVE(132, 2, "Esc"),
+        CZK(203, 2, "K\u010d"),
+        DJF(262, 0, "Fdj"), DKK(208, 2, "kr."), DOP(214, 2, "RD$"), DZD(12, 2, "\u062f.\u062c."),
+        EGP(818, 2, "\u062c.\u0645."), ETB(230, 2, "Br"), EUR(978, 2, "\u20ac"),
+        FJD(242, 2, "$"), FKP(238, 2, "\u00a3"),
+        GBP(826, 2, "\u00a3"), GEL(981, 2, "\u20be"), GHS(936, 2, "GH\u20b5"),
+        GIP(292, 2, "\u00a3"), GMD(270, 2, "D"), GNF(324, 0, "FG"), GTQ(320, 2, "Q"),
+        GYD(328, 2, "$"),
+        HKD(344, 2, "HK$"), HNL(340, 2, "L"), HRK(191, 2, "kn"), HTG(332, 2, "G"),
+        HUF(348, 2, "Ft"),
+        IDR(360, 2, "Rp"), ILS(376, 2, "\u20aa"), INR(356, 2, "\u20b9"), ISK(352, 0, "kr"),
+        JMD(388, 2, "$"), JOD(400, 3, "\u062f.\u0623."), JPY(392, 0, "\u00a5"),
+        KES(404, 2, "Ksh"), KGS(417, 2, "\u0441\u043e\u043c"), KHR(116, 2, "\u17db"),
+        KMF(174, 0, "CF"), KRW(410, 0, "\u20a9"), KWD(414, 3, "\u062f.\u0643."), KYD(136, 2, "$"),
+        KZT(398, 2, "\u20b8"),
+        LAK(418, 2, "\u20ad"), LBP(422, 2, "\u0644.\u0644."), LKR(144, 2, "Rs."),
+        LYD(434, 3, "\u062f.\u0644."),
+        MAD(504, 2, "\u062f.\u0645."), MDL(498, 2, "L"), MKD(807, 2, "den"), MMK(104, 2, "K"),
+        MNT(496, 2, "\u20ae"), MOP(446, 2, "MOP$"), MRU(929, 2, "UM"), MUR(480, 2, "Rs"),
+        MVR(462, 2, "Rf"), MWK(454, 2, "MK"), MXN(484, 2, "$"), MYR(458, 2, "RM"),
+        MZN(943, 2, "MTn"),
+        NAD(516, 2, "$"), NGN(566, 2, "\u20a6"), NIO(558, 2, "C$"), NOK(578, 2, "kr"),
+        NPR(524, 2, "\u0928\u0947\u0930\u0942"), NZD(554, 2, "$"),
+        OMR(512, 3, "\u0631.\u0639."),
+        PAB(590, 2, "B/."), PEN(604, 2, "S/"), PGK(598, 2, "K"), PHP(608, 2, "\u20b1"),
+        PKR(586, 2, "Rs"), PLN(985, 2, "z\u0142"), PYG(600, 0, "Gs."),
+        QAR(634, 2, "\u0631.\u0642."),
+        RON(946, 2, "lei"), RSD(941, 2, "din."), RUB(643, 2, "\u20bd"), RWF(646, 0, "RF"),
+        SAR(682, 2, "\u0631.\u0633."), SBD(90, 2, "$"), SCR(690, 2, "SR"), SEK(752, 2, "kr"),
+        SGD(702, 2, "$"), SHP(654, 2, "\u00a3"), SLL(694, 2, "Le"), SOS(706, 2, "S"),
+        STN(930, 2, "Db"), SVC(222, 2, "C"), SZL(748, 2, "E"),
+        THB(764, 2, "\u0e3f"), TND(788, 3, "DT"), TOP(776, 2, "T$"), TRY(949, 2, "\u20ba"),
+        TTD(780, 2, "$"), TWD(901, 2, "$"), TZS(834, 2, "TSh"),
+        UAH(980, 2, "\u20b4"), UGX(800, 0, "USh"), USD(840, 2, "$"), UYU(858, 2, "$"),
+        UZS(860, 2, "so\u02bbm"),
+        VEF(937, 2, "Bs.F"), VND(704, 0, "\u20ab"), VUV(548, 0, "VT"),
+        WST(882, 2, "WS$"),
+        XAF(950, 0, "FCFA"), XCD(951, 2, "$"), XOF(952, 0, "F CFA"), XPF(953, 0, "FCFP"),
+        YER(886, 2, "\u0631.\u064a."),
+        ZAR(710, 2, "R"), ZMW(967, 2, "K");
+
+        private static final TypeCurrency[] BY_CODE = new TypeCurrency[26 * 26 * 26];
+
+        static {
+            for (TypeCurrency currency : values()) {
+                BY_CODE[index(currency.mCode.charAt(0), currency.mCode.charAt(1), currency.mCode.charAt(2))] = currency;
+            }
+        }
+
+        private final String mCode;
+        private final int mNumericCode;
+        private final int mExponent;
+        private final String mSymbol;
+
+        TypeCurrency(int numericCode, int exponent, String symbol){
+            mCode = name();
+            mNumericCode = numericCode;
+            mExponent = exponent;
+            mSymbol = symbol;
+        }
+
+        /**
+         * @return alphabetic ISO 4217 code, e.g. {@code "USD"}.
+         */
+        public String getCode(){
+            return mCode;
+        }
+
+        public int getNumericCode(){
+            return mNumericCode;
+        }
+
+        /**
+         * @return ISO 4217 minor unit exponent, the number of fraction digits in an amount.
+         */
+        public int getExponent(){
+            return mExponent;
+        }
+
+        public String getSymbol(){
+            return mSymbol;
+        }
+
+        /**
+         * Resolves an alphabetic code in either case without allocating.
+         *
+         * @return the currency, or null when the code is not supported.
+         */
+        public static TypeCurrency fromCode(CharSequence code){
+            if (code == null || code.length() != 3) return null;
+            return fromCode(code.charAt(0), code.charAt(1), code.charAt(2));
+        }
+
+        public static TypeCurrency fromCode(char first, char second, char third){
+            int index = index(first, second, third);
+            return index < 0 ? null : BY_CODE[index];
+        }
+
+        private static int index(char first, char second, char third){
+            int a = letter(first), b = letter(second), c = letter(third);
+            if ((a | b | c) < 0) return -1;
+            return (a * 26 + b) * 26 + c;
+        }
+
+        private static int letter(char c){
+            if (c >= 'A' && c <= 'Z') return c - 'A';
+            if (c >= 'a' && c <= 'z') return c - 'a';
+            return -1;
+        }
+    }
+}
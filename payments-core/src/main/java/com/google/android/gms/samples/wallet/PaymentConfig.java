@@ -0,0 +1,185 @@
+package com.google.android.gms.samples.wallet;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the merchant, card networks, auth methods and gateway parameters.
+ * <p>
+ * Snapshots are validated once when built and can be shared between threads freely. The requests
+ * derived from a snapshot are serialized lazily and cached on it, so reconfiguring a client just
+ * publishes a new snapshot and request builders never need a lock.
+ */
+public final class PaymentConfig {
+    public static final PaymentConfig EMPTY = new Builder().build();
+
+    private final String mMerchantName;
+    private final PayUtils.Tokenization mTokenization;
+    private final Map<String, String> mTokenParameters;
+    private final Set<PayUtils.Cards> mCards;
+    private final Set<PayUtils.PayMethod> mMethods;
+    private final boolean mComplete;
+
+    private String mReadyToPayRequest;
+    private PaymentRequestTemplate mPaymentTemplate;
+
+    private PaymentConfig(Builder builder) {
+        mMerchantName = builder.mMerchantName;
+        mTokenization = builder.mTokenization;
+        mTokenParameters = Collections.unmodifiableMap(new LinkedHashMap<>(builder.mTokenParameters));
+        mCards = Collections.unmodifiableSet(EnumSet.copyOf(builder.mCards));
+        mMethods = Collections.unmodifiableSet(EnumSet.copyOf(builder.mMethods));
+        mComplete = !mTokenParameters.isEmpty() && !mCards.isEmpty() && !mMethods.isEmpty();
+    }
+
+    /**
+     * @return the name shown in the payment sheet, or null to show none.
+     */
+    public String getMerchantName() {
+        return mMerchantName;
+    }
+
+    public PayUtils.Tokenization getTokenization() {
+        return mTokenization;
+    }
+
+    public Map<String, String> getTokenParameters() {
+        return mTokenParameters;
+    }
+
+    public Set<PayUtils.Cards> getCards() {
+        return mCards;
+    }
+
+    public Set<PayUtils.PayMethod> getMethods() {
+        return mMethods;
+    }
+
+    /**
+     * @return true when gateway parameters, cards and auth methods are all configured.
+     */
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    /**
+     * @return the serialized IsReadyToPayRequest, built on first use.
+     */
+    public String getReadyToPayRequest() {
+        String request = mReadyToPayRequest;
+        if (request == null) mReadyToPayRequest = request = PaymentRequests.isReadyToPayRequest(this);
+        return request;
+    }
+
+    /**
+     * @return the serialized PaymentDataRequest for a checkout of {@code price}.
+     */
+    public String getPaymentDataRequest(Money price) {
+        return getPaymentTemplate().splice(price.toDecimalString(), price.getCurrency().getCode());
+    }
+
+    /**
+     * @return the serialized PaymentDataRequest for a checkout of {@code cart}, with its line items.
+     */
+    public String getPaymentDataRequest(Cart cart) {
+        return getPaymentTemplate().splice(cart.getTransactionInfo());
+    }
+
+    /**
+     * @param transactionInfo serialized TransactionInfo, see {@link Cart#getTransactionInfo()}.
+     */
+    public String getPaymentDataRequest(CharSequence transactionInfo) {
+        return getPaymentTemplate().splice(transactionInfo);
+    }
+
+    PaymentRequestTemplate getPaymentTemplate() {
+        PaymentRequestTemplate template = mPaymentTemplate;
+        if (template == null) mPaymentTemplate = template = PaymentRequests.paymentTemplate(this);
+        return template;
+    }
+
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.mMerchantName = mMerchantName;
+        builder.mTokenization = mTokenization;
+        builder.mTokenParameters.putAll(mTokenParameters);
+        builder.mCards.addAll(mCards);
+        builder.mMethods.addAll(mMethods);
+        return builder;
+    }
+
+    public static final class Builder {
+        private String mMerchantName;
+        private PayUtils.Tokenization mTokenization = PayUtils.Tokenization.PAYMENT_GATEWAY;
+        private final LinkedHashMap<String, String> mTokenParameters = new LinkedHashMap<>();
+        private final EnumSet<PayUtils.Cards> mCards = EnumSet.noneOf(PayUtils.Cards.class);
+        private final EnumSet<PayUtils.PayMethod> mMethods = EnumSet.noneOf(PayUtils.PayMethod.class);
+
+        public Builder setMerchantName(String name) {
+            mMerchantName = name;
+            return this;
+        }
+
+        /**
+         * {@link PayUtils.Tokenization#PAYMENT_GATEWAY} unless set.
+         */
+        public Builder setTokenization(PayUtils.Tokenization tokenization) {
+            mTokenization = tokenization;
+            return this;
+        }
+
+        /**
+         * Has the credentials encrypted for the merchant instead of a gateway: DIRECT tokenization
+         * with protocol ECv2, replacing any gateway parameters.
+         *
+         * @param publicKey base64 uncompressed NIST P-256 point of the merchant's encryption key.
+         */
+        public Builder setDirectTokenization(String publicKey) {
+            mTokenization = PayUtils.Tokenization.DIRECT;
+            mTokenParameters.clear();
+            mTokenParameters.put("protocolVersion", "ECv2");
+            mTokenParameters.put("publicKey", publicKey);
+            return this;
+        }
+
+        /**
+         * Sets a tokenization parameter such as {@code gateway}, a null value removes it.
+         */
+        public Builder addParameter(String name, String value) {
+            if (name == null) throw new NullPointerException("name == null");
+            if (value == null) mTokenParameters.remove(name);
+            else mTokenParameters.put(name, value);
+            return this;
+        }
+
+        public Builder addCards(PayUtils.Cards... cards) {
+            Collections.addAll(mCards, cards);
+            return this;
+        }
+
+        public Builder addPayMethods(PayUtils.PayMethod... methods) {
+            Collections.addAll(mMethods, methods);
+            return this;
+        }
+
+        public PaymentConfig build() {
+            return new PaymentConfig(this);
+        }
+
+        /**
+         * Builds a snapshot whose requests were serialized ahead of time, by
+         * {@code PaymentConfigGenerator} in payments-tools, so nothing is serialized at runtime.
+         *
+         * @param paymentRequestHead the PaymentDataRequest up to its {@code transactionInfo} value.
+         */
+        PaymentConfig build(String readyToPayRequest, String paymentRequestHead) {
+            PaymentConfig config = new PaymentConfig(this);
+            config.mReadyToPayRequest = readyToPayRequest;
+            config.mPaymentTemplate = new PaymentRequestTemplate(paymentRequestHead);
+            return config;
+        }
+    }
+}
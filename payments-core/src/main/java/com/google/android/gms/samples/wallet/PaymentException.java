@@ -0,0 +1,31 @@
+package com.google.android.gms.samples.wallet;
+
+/**
+ * A wallet call that failed, with the status it failed with.
+ */
+public class PaymentException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final int mStatusCode;
+
+    public PaymentException(int statusCode, String message) {
+        super(message);
+        mStatusCode = statusCode;
+    }
+
+    /**
+     * One of the {@link WalletClient} statuses or a status code reported by the wallet.
+     */
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    public boolean isTimeout() {
+        return mStatusCode == WalletClient.STATUS_TIMEOUT;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentException{status=" + mStatusCode + ", message=" + getMessage() + '}';
+    }
+}
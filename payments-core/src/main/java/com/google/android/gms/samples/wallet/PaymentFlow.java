@@ -0,0 +1,356 @@
+package com.google.android.gms.samples.wallet;
+
+import java.text.ParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The checkout session over a {@link WalletClient}: the readiness check under its deadline, the
+ * payment sheet for a cart, and the token out of the sheet's result.
+ * <p>
+ * The app runs it over Play services, with the main thread showing the sheet and a Handler timing
+ * the deadline; the load test runs the same code over a simulated wallet and a scheduler. Requests
+ * are serialized on the executor, the sheet is shown on the sheet executor, and every stage is
+ * recorded in {@link CheckoutMetrics}.
+ */
+public final class PaymentFlow {
+
+    /**
+     * What the button does when the readiness check misses its deadline.
+     */
+    public enum ReadinessFallback {
+        /** Report not ready. */
+        HIDE,
+        /** Report ready, {@link #confirmReadiness()} has the answer of the check still running. */
+        OPTIMISTIC
+    }
+
+    /**
+     * Runs deadlines, on whatever timer fits the caller's threading.
+     */
+    public interface Timer {
+        /**
+         * Runs {@code task} once {@code delayMillis} have passed.
+         *
+         * @return cancels the task when run.
+         */
+        Runnable schedule(Runnable task, long delayMillis);
+    }
+
+    public static final long DEFAULT_READINESS_DEADLINE_MILLIS = 3000;
+
+    private final WalletClient mClient;
+    private final ReadinessCache mReadinessCache;
+    private final Executor mSheetExecutor;
+    private final Timer mTimer;
+    private volatile PaymentConfig mConfig = PaymentConfig.EMPTY;
+    private Executor mExecutor = ForkJoinPool.commonPool();
+    private long mReadinessTtlMillis = ReadinessCache.DEFAULT_TTL_MILLIS;
+    private long mReadinessDeadlineMillis = DEFAULT_READINESS_DEADLINE_MILLIS;
+    private ReadinessFallback mReadinessFallback = ReadinessFallback.HIDE;
+
+    /**
+     * @param sheetExecutor the thread {@link WalletClient#loadPaymentData} is called on.
+     * @param timer times the readiness deadline.
+     */
+    public PaymentFlow(WalletClient client, ReadinessCache readinessCache, Executor sheetExecutor, Timer timer) {
+        mClient = client;
+        mReadinessCache = readinessCache;
+        mSheetExecutor = sheetExecutor;
+        mTimer = timer;
+    }
+
+    /**
+     * @return a timer running deadlines on {@code scheduler}.
+     */
+    public static Timer timer(final ScheduledExecutorService scheduler) {
+        return new Timer() {
+            @Override
+            public Runnable schedule(Runnable task, long delayMillis) {
+                final ScheduledFuture<?> scheduled = scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+                return new Runnable() {
+                    @Override
+                    public void run() {
+                        scheduled.cancel(false);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Publishes a complete configuration snapshot at once.
+     */
+    public PaymentFlow setConfig(PaymentConfig config) {
+        mConfig = config;
+        return this;
+    }
+
+    public PaymentConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * How long a successful readiness check is reused for this configuration.
+     */
+    public PaymentFlow setReadinessTtl(long millis) {
+        mReadinessTtlMillis = millis;
+        return this;
+    }
+
+    /**
+     * Upper bound on {@link #readiness()}. When it is exceeded the answer comes from the
+     * {@link ReadinessFallback} and the timeout is recorded. Zero waits indefinitely.
+     */
+    public PaymentFlow setReadinessDeadline(long millis) {
+        mReadinessDeadlineMillis = millis;
+        return this;
+    }
+
+    public PaymentFlow setReadinessFallback(ReadinessFallback fallback) {
+        mReadinessFallback = fallback;
+        return this;
+    }
+
+    public ReadinessFallback getReadinessFallback() {
+        return mReadinessFallback;
+    }
+
+    /**
+     * Executor requests are serialized on before the payment sheet is shown.
+     */
+    public PaymentFlow setExecutor(Executor executor) {
+        mExecutor = executor;
+        return this;
+    }
+
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+
+    /**
+     * Drops the cached readiness result, so the next check goes to the wallet again.
+     */
+    public void invalidateReadiness() {
+        mReadinessCache.invalidate(mConfig.getReadyToPayRequest());
+    }
+
+    /**
+     * Serializes the requests and starts the readiness check ahead of time.
+     */
+    public void prewarm() {
+        mConfig.getPaymentTemplate();
+        readiness(new WalletClient.Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean ready) {}
+
+            @Override
+            public void onFailure(int statusCode, String message) {}
+        });
+    }
+
+    private void readiness(WalletClient.Callback<Boolean> callback) {
+        mReadinessCache.get(mClient, mConfig.getReadyToPayRequest(), mReadinessTtlMillis, callback);
+    }
+
+    /**
+     * Whether to show the Google Pay button, within the readiness deadline. A failed check reads
+     * as not ready. The wait is recorded as {@link CheckoutMetrics.Stage#READINESS_DEADLINE}, apart
+     * from the isReadyToPay call it may be waiting on.
+     */
+    public CompletableFuture<Boolean> readiness() {
+        if (!mConfig.isComplete()) return failed(WalletClient.STATUS_UNKNOWN, "Payment info not found!");
+        final long started = CheckoutMetrics.start();
+        final ReadinessFallback fallback = mReadinessFallback;
+        WalletFuture<Boolean> check = new WalletFuture<>();
+        readiness(withDeadline(check, "isReadyToPay", mReadinessDeadlineMillis));
+        return check.handle(new BiFunction<Boolean, Throwable, Boolean>() {
+            @Override
+            public Boolean apply(Boolean ready, Throwable error) {
+                if (error == null) {
+                    CheckoutMetrics.success(CheckoutMetrics.Stage.READINESS_DEADLINE, started);
+                    return ready;
+                }
+                int statusCode = error instanceof PaymentException
+                        ? ((PaymentException) error).getStatusCode() : WalletClient.STATUS_UNKNOWN;
+                CheckoutMetrics.failure(CheckoutMetrics.Stage.READINESS_DEADLINE, started, statusCode);
+                return statusCode == WalletClient.STATUS_TIMEOUT && fallback == ReadinessFallback.OPTIMISTIC;
+            }
+        });
+    }
+
+    /**
+     * The answer of the readiness check with no deadline, joining the one already running.
+     */
+    public CompletableFuture<Boolean> confirmReadiness() {
+        if (!mConfig.isComplete()) return failed(WalletClient.STATUS_UNKNOWN, "Payment info not found!");
+        WalletFuture<Boolean> check = new WalletFuture<>();
+        readiness(check);
+        return check;
+    }
+
+    /**
+     * Shows the payment sheet once {@code price} is known. The request is serialized on the
+     * executor while the price is still being looked up elsewhere. Every call is its own session,
+     * so several can be pending at once.
+     *
+     * @return the result of the sheet, or a {@link PaymentException} when it failed.
+     */
+    public CompletableFuture<PaymentResult> pay(CompletionStage<Money> price) {
+        final PaymentConfig config = mConfig;
+        if (!config.isComplete()) return failed(WalletClient.STATUS_UNKNOWN, "Payment info not found!");
+        return show(price.thenApplyAsync(new Function<Money, PaymentRequest>() {
+            @Override
+            public PaymentRequest apply(Money price) {
+                long started = CheckoutMetrics.start();
+                String request = config.getPaymentDataRequest(price);
+                CheckoutMetrics.success(CheckoutMetrics.Stage.REQUEST_BUILD, started);
+                return new PaymentRequest(price, request);
+            }
+        }, mExecutor));
+    }
+
+    /**
+     * Shows the payment sheet for the cart with its line items, tokenized for {@code gateway}, as
+     * picked by a {@link GatewayRouter}, or with the flow's own config when it is null. The cart is
+     * read on the calling thread, the request is serialized on the executor.
+     */
+    public CompletableFuture<PaymentResult> pay(GatewayRouter.Gateway gateway, Cart cart) {
+        final PaymentConfig config = gateway == null ? mConfig : gateway.getConfig();
+        if (!config.isComplete()) return failed(WalletClient.STATUS_UNKNOWN, "Payment info not found!");
+        final String transactionInfo = cart.getTransactionInfo();
+        final Money total = cart.getTotal();
+        return show(CompletableFuture.supplyAsync(new Supplier<PaymentRequest>() {
+            @Override
+            public PaymentRequest get() {
+                long started = CheckoutMetrics.start();
+                String request = config.getPaymentDataRequest(transactionInfo);
+                CheckoutMetrics.success(CheckoutMetrics.Stage.REQUEST_BUILD, started);
+                return new PaymentRequest(total, request);
+            }
+        }, mExecutor));
+    }
+
+    private CompletableFuture<PaymentResult> show(CompletionStage<PaymentRequest> request) {
+        return request.thenComposeAsync(new Function<PaymentRequest, CompletionStage<PaymentResult>>() {
+            @Override
+            public CompletionStage<PaymentResult> apply(PaymentRequest request) {
+                Sheet sheet = new Sheet(request.price, CheckoutMetrics.start());
+                // No deadline: the sheet waits on the user, and a result dropped after a deadline
+                // would be a payment the user authorized that is never submitted.
+                mClient.loadPaymentData(request.json, sheet);
+                return sheet;
+            }
+        }, mSheetExecutor).toCompletableFuture();
+    }
+
+    /**
+     * Extracts the token from a sheet's result, recorded as
+     * {@link CheckoutMetrics.Stage#TOKEN_PARSE}.
+     */
+    public static PaymentToken parseToken(PaymentResult result) throws ParseException {
+        long started = CheckoutMetrics.start();
+        try {
+            PaymentToken token = PaymentToken.parse(result.getPaymentDataJson());
+            CheckoutMetrics.success(CheckoutMetrics.Stage.TOKEN_PARSE, started);
+            return token;
+        } catch (ParseException e) {
+            CheckoutMetrics.failure(CheckoutMetrics.Stage.TOKEN_PARSE, started, WalletClient.STATUS_UNKNOWN);
+            throw e;
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(int statusCode, String message) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new PaymentException(statusCode, message));
+        return future;
+    }
+
+    /**
+     * Fails {@code future} with {@link WalletClient#STATUS_TIMEOUT} unless the callback returned
+     * here completes it within {@code deadlineMillis}. Canceling the future drops the result.
+     */
+    private <T> WalletClient.Callback<T> withDeadline(WalletFuture<T> future, String operation, long deadlineMillis) {
+        if (deadlineMillis <= 0) return future;
+        final DeadlineCallback<T> deadline = new DeadlineCallback<>(future, operation);
+        final Runnable cancel = mTimer.schedule(deadline, deadlineMillis);
+        future.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable error) {
+                deadline.cancel();
+                cancel.run();
+            }
+        });
+        return deadline;
+    }
+
+    /**
+     * The outcome of a payment sheet: the sheet's result, canceled included, or a
+     * {@link PaymentException} when it failed. Hand it to whatever delivers the sheet's result,
+     * such as a result recovered after the process was restarted while the sheet was up.
+     */
+    public static final class Sheet extends CompletableFuture<PaymentResult> implements WalletClient.Callback<String> {
+        private final Money mPrice;
+        private final long mStarted;
+
+        /**
+         * @param price the amount the sheet was shown for.
+         * @param started when the sheet was shown, from {@link CheckoutMetrics#start()}, to record
+         *     it as {@link CheckoutMetrics.Stage#LOAD_PAYMENT_DATA}; 0 to not record it.
+         */
+        public Sheet(Money price, long started) {
+            mPrice = price;
+            mStarted = started;
+        }
+
+        @Override
+        public void onResult(String paymentDataJson) {
+            CheckoutMetrics.success(CheckoutMetrics.Stage.LOAD_PAYMENT_DATA, mStarted);
+            complete(PaymentResult.success(mPrice, paymentDataJson));
+        }
+
+        @Override
+        public void onFailure(int statusCode, String message) {
+            CheckoutMetrics.failure(CheckoutMetrics.Stage.LOAD_PAYMENT_DATA, mStarted, statusCode);
+            if (statusCode == WalletClient.STATUS_CANCELED) {
+                complete(PaymentResult.canceled(mPrice));
+            } else {
+                completeExceptionally(new PaymentException(statusCode, message));
+            }
+        }
+    }
+
+    private static final class PaymentRequest {
+        final Money price;
+        final String json;
+
+        PaymentRequest(Money price, String json) {
+            this.price = price;
+            this.json = json;
+        }
+    }
+
+    /**
+     * Completes with the result of a wallet call, or fails with a {@link PaymentException}.
+     */
+    private static final class WalletFuture<T> extends CompletableFuture<T> implements WalletClient.Callback<T> {
+        @Override
+        public void onResult(T result) {
+            complete(result);
+        }
+
+        @Override
+        public void onFailure(int statusCode, String message) {
+            completeExceptionally(new PaymentException(statusCode, message));
+        }
+    }
+}
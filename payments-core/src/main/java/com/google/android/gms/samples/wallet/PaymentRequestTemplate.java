@@ -0,0 +1,46 @@
+package com.google.android.gms.samples.wallet;
+
+/**
+ * Pre-serialized PaymentDataRequest.
+ * <p>
+ * Merchant, cards, auth methods and gateway do not change once the client is configured, so the
+ * request is serialized once up to its trailing {@code transactionInfo} member and only the
+ * transaction is written per checkout.
+ */
+final class PaymentRequestTemplate {
+    private final String mHead;
+
+    /**
+     * @param head serialized request left open right after the {@code "transactionInfo":} name.
+     */
+    PaymentRequestTemplate(String head) {
+        mHead = head;
+    }
+
+    String getHead() {
+        return mHead;
+    }
+
+    String splice(String price, String currency) {
+        return RequestWriter.obtain()
+                .raw(mHead)
+                .beginObject()
+                .name("totalPrice").value(price)
+                .name("totalPriceStatus").value("FINAL")
+                .name("currencyCode").value(currency)
+                .endObject()
+                .endObject()
+                .toString();
+    }
+
+    /**
+     * @param transactionInfo serialized TransactionInfo object.
+     */
+    String splice(CharSequence transactionInfo) {
+        return RequestWriter.obtain()
+                .raw(mHead)
+                .rawValue(transactionInfo)
+                .endObject()
+                .toString();
+    }
+}
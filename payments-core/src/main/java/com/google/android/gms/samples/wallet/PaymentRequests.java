@@ -0,0 +1,82 @@
+package com.google.android.gms.samples.wallet;
+
+import java.util.Map;
+
+/**
+ * Serializes the Google Pay API requests described by a {@link PaymentConfig}.
+ */
+final class PaymentRequests {
+    private PaymentRequests() {}
+
+    static String isReadyToPayRequest(PaymentConfig config) {
+        RequestWriter writer = writeBaseRequest(RequestWriter.obtain());
+        writeBaseCardPaymentMethodFields(writer.name("allowedPaymentMethods").beginArray(), config).endObject();
+        return writer.endArray().endObject().toString();
+    }
+
+    /**
+     * @return the PaymentDataRequest serialized up to its trailing {@code transactionInfo} member.
+     */
+    static PaymentRequestTemplate paymentTemplate(PaymentConfig config) {
+        RequestWriter writer = writeBaseRequest(RequestWriter.obtain());
+        writeCardPaymentMethod(writer.name("allowedPaymentMethods").beginArray(), config).endArray();
+        writeMerchantInfo(writer.name("merchantInfo"), config);
+        writer.name("shippingAddressRequired").value(false);
+        writer.name("shippingAddressParameters").beginObject().name("phoneNumberRequired").value(false).endObject();
+        return new PaymentRequestTemplate(writer.name("transactionInfo").toString());
+    }
+
+    private static RequestWriter writeBaseRequest(RequestWriter writer) {
+        return writer.beginObject().name("apiVersion").value(2).name("apiVersionMinor").value(0);
+    }
+
+    private static RequestWriter writeTokenizationSpecification(RequestWriter writer, PaymentConfig config) {
+        writer.beginObject().name("type").value(config.getTokenization().name()).name("parameters").beginObject();
+        for (Map.Entry<String, String> parameter : config.getTokenParameters().entrySet()) {
+            writer.name(parameter.getKey()).value(parameter.getValue());
+        }
+        return writer.endObject().endObject();
+    }
+
+    private static RequestWriter writeAllowedCardNetworks(RequestWriter writer, PaymentConfig config) {
+        writer.beginArray();
+        for (PayUtils.Cards card : config.getCards()) {
+            writer.value(card.getCardNetwork());
+        }
+        return writer.endArray();
+    }
+
+    private static RequestWriter writeAllowedCardAuthMethods(RequestWriter writer, PaymentConfig config) {
+        writer.beginArray();
+        // CARDS and PAN_ONLY (TOKENIZED_CARD and CRYPTOGRAM_3DS) name the same API method.
+        boolean panOnly = false, cryptogram = false;
+        for (PayUtils.PayMethod method : config.getMethods()) {
+            String name = method.getPayMethod();
+            boolean cryptogramMethod = "CRYPTOGRAM_3DS".equals(name);
+            if (cryptogramMethod ? cryptogram : panOnly) continue;
+            if (cryptogramMethod) cryptogram = true;
+            else panOnly = true;
+            writer.value(name);
+        }
+        return writer.endArray();
+    }
+
+    private static RequestWriter writeBaseCardPaymentMethodFields(RequestWriter writer, PaymentConfig config) {
+        writer.beginObject().name("type").value("CARD").name("parameters").beginObject();
+        writeAllowedCardAuthMethods(writer.name("allowedAuthMethods"), config);
+        writeAllowedCardNetworks(writer.name("allowedCardNetworks"), config);
+        return writer.endObject();
+    }
+
+    private static RequestWriter writeCardPaymentMethod(RequestWriter writer, PaymentConfig config) {
+        writeBaseCardPaymentMethodFields(writer, config);
+        return writeTokenizationSpecification(writer.name("tokenizationSpecification"), config).endObject();
+    }
+
+    private static RequestWriter writeMerchantInfo(RequestWriter writer, PaymentConfig config) {
+        writer.beginObject();
+        // Left out rather than written as null when unset, the wallet then shows no merchant name.
+        if (config.getMerchantName() != null) writer.name("merchantName").value(config.getMerchantName());
+        return writer.endObject();
+    }
+}
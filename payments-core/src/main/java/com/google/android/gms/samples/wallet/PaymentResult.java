@@ -0,0 +1,42 @@
+package com.google.android.gms.samples.wallet;
+
+/**
+ * How a payment sheet ended: with the serialized PaymentData, or canceled by the user. Failures are
+ * reported as {@link PaymentException}.
+ */
+public final class PaymentResult {
+    private final Money mPrice;
+    private final String mPaymentDataJson;
+
+    private PaymentResult(Money price, String paymentDataJson) {
+        mPrice = price;
+        mPaymentDataJson = paymentDataJson;
+    }
+
+    public static PaymentResult success(Money price, String paymentDataJson) {
+        if (paymentDataJson == null) throw new NullPointerException("paymentDataJson == null");
+        return new PaymentResult(price, paymentDataJson);
+    }
+
+    public static PaymentResult canceled(Money price) {
+        return new PaymentResult(price, null);
+    }
+
+    public boolean isCanceled() {
+        return mPaymentDataJson == null;
+    }
+
+    /**
+     * The amount the sheet was shown for.
+     */
+    public Money getPrice() {
+        return mPrice;
+    }
+
+    /**
+     * @return the serialized PaymentData, null when canceled.
+     */
+    public String getPaymentDataJson() {
+        return mPaymentDataJson;
+    }
+}
@@ -0,0 +1,198 @@
+package com.google.android.gms.samples.wallet;
+
+import java.text.ParseException;
+
+/**
+ * Fields of a Google Pay PaymentData response that the app forwards to its gateway.
+ * <p>
+ * {@link #parse(String)} reads them in a single pass over the response text, without building a
+ * JSONObject tree and copying the escaped token through it.
+ *
+ * @see <a href="https://developers.google.com/pay/api/android/reference/response-objects#PaymentData">PaymentData</a>
+ */
+public final class PaymentToken {
+    private String mToken;
+    private String mTokenizationType;
+    private String mPaymentMethodType;
+    private String mDescription;
+    private String mCardNetwork;
+    private String mCardDetails;
+    private Address mBillingAddress;
+    private String mEmail;
+
+    private PaymentToken() {}
+
+    public static PaymentToken parse(String paymentData) throws ParseException {
+        PaymentToken result = new PaymentToken();
+        JsonScanner scanner = new JsonScanner(paymentData);
+        scanner.beginObject();
+        while (scanner.hasNext()) {
+            String name = scanner.nextName();
+            if ("paymentMethodData".equals(name)) result.readPaymentMethodData(scanner);
+            else if ("email".equals(name)) result.mEmail = scanner.nextString();
+            else scanner.skipValue();
+        }
+        scanner.endObject();
+        if (result.mToken == null) throw new ParseException("paymentMethodData.tokenizationData.token not found", 0);
+        return result;
+    }
+
+    private void readPaymentMethodData(JsonScanner scanner) throws ParseException {
+        scanner.beginObject();
+        while (scanner.hasNext()) {
+            String name = scanner.nextName();
+            if ("tokenizationData".equals(name)) readTokenizationData(scanner);
+            else if ("info".equals(name)) readInfo(scanner);
+            else if ("type".equals(name)) mPaymentMethodType = scanner.nextString();
+            else if ("description".equals(name)) mDescription = scanner.nextString();
+            else scanner.skipValue();
+        }
+        scanner.endObject();
+    }
+
+    private void readTokenizationData(JsonScanner scanner) throws ParseException {
+        scanner.beginObject();
+        while (scanner.hasNext()) {
+            String name = scanner.nextName();
+            if ("token".equals(name)) mToken = scanner.nextString();
+            else if ("type".equals(name)) mTokenizationType = scanner.nextString();
+            else scanner.skipValue();
+        }
+        scanner.endObject();
+    }
+
+    private void readInfo(JsonScanner scanner) throws ParseException {
+        scanner.beginObject();
+        while (scanner.hasNext()) {
+            String name = scanner.nextName();
+            if ("cardNetwork".equals(name)) mCardNetwork = scanner.nextString();
+            else if ("cardDetails".equals(name)) mCardDetails = scanner.nextString();
+            else if ("billingAddress".equals(name)) mBillingAddress = Address.read(scanner);
+            else scanner.skipValue();
+        }
+        scanner.endObject();
+    }
+
+    /**
+     * @return the gateway token: an escaped JSON string for {@code PAYMENT_GATEWAY} tokenization.
+     */
+    public String getToken() {
+        return mToken;
+    }
+
+    public String getTokenizationType() {
+        return mTokenizationType;
+    }
+
+    public String getPaymentMethodType() {
+        return mPaymentMethodType;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public String getCardNetwork() {
+        return mCardNetwork;
+    }
+
+    public String getCardDetails() {
+        return mCardDetails;
+    }
+
+    /**
+     * @return billing address, or null unless it was requested in the card parameters.
+     */
+    public Address getBillingAddress() {
+        return mBillingAddress;
+    }
+
+    public String getEmail() {
+        return mEmail;
+    }
+
+    /**
+     * @see <a href="https://developers.google.com/pay/api/android/reference/response-objects#Address">Address</a>
+     */
+    public static final class Address {
+        private String mName;
+        private String mAddress1;
+        private String mAddress2;
+        private String mAddress3;
+        private String mLocality;
+        private String mAdministrativeArea;
+        private String mCountryCode;
+        private String mPostalCode;
+        private String mSortingCode;
+        private String mPhoneNumber;
+
+        private Address() {}
+
+        static Address read(JsonScanner scanner) throws ParseException {
+            if (scanner.peek() != JsonScanner.OBJECT) {
+                scanner.skipValue();
+                return null;
+            }
+            Address address = new Address();
+            scanner.beginObject();
+            while (scanner.hasNext()) {
+                String name = scanner.nextName();
+                switch (name) {
+                    case "name": address.mName = scanner.nextString(); break;
+                    case "address1": address.mAddress1 = scanner.nextString(); break;
+                    case "address2": address.mAddress2 = scanner.nextString(); break;
+                    case "address3": address.mAddress3 = scanner.nextString(); break;
+                    case "locality": address.mLocality = scanner.nextString(); break;
+                    case "administrativeArea": address.mAdministrativeArea = scanner.nextString(); break;
+                    case "countryCode": address.mCountryCode = scanner.nextString(); break;
+                    case "postalCode": address.mPostalCode = scanner.nextString(); break;
+                    case "sortingCode": address.mSortingCode = scanner.nextString(); break;
+                    case "phoneNumber": address.mPhoneNumber = scanner.nextString(); break;
+                    default: scanner.skipValue();
+                }
+            }
+            scanner.endObject();
+            return address;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String getAddress1() {
+            return mAddress1;
+        }
+
+        public String getAddress2() {
+            return mAddress2;
+        }
+
+        public String getAddress3() {
+            return mAddress3;
+        }
+
+        public String getLocality() {
+            return mLocality;
+        }
+
+        public String getAdministrativeArea() {
+            return mAdministrativeArea;
+        }
+
+        public String getCountryCode() {
+            return mCountryCode;
+        }
+
+        public String getPostalCode() {
+            return mPostalCode;
+        }
+
+        public String getSortingCode() {
+            return mSortingCode;
+        }
+
+        public String getPhoneNumber() {
+            return mPhoneNumber;
+        }
+    }
+}
@@ -16,19 +16,8 @@
 
 package com.google.android.gms.samples.wallet;
 
-import android.app.Activity;
-
-import com.google.android.gms.wallet.PaymentsClient;
-import com.google.android.gms.wallet.Wallet;
-import com.google.android.gms.wallet.WalletConstants;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 
 /**
  * Contains helper static methods for dealing with the Payments API.
@@ -48,16 +37,11 @@ public class PaymentsUtil {
   /**
    * Create a Google Pay API base request object with properties used in all requests.
    *
-   * @return Google Pay API base request object.
-   * @throws JSONException
+   * @param writer writer positioned where the request object starts.
+   * @return the writer, left inside the open request object.
    */
-  private static JSONObject getBaseRequest() throws JSONException {
-    return new JSONObject().put("apiVersion", 2).put("apiVersionMinor", 0);
-  }
-
-  public static PaymentsClient createPaymentsClient(Activity activity) {
-    Wallet.WalletOptions walletOptions = new Wallet.WalletOptions.Builder().setEnvironment(WalletConstants.ENVIRONMENT_TEST).build();
-    return Wallet.getPaymentsClient(activity, walletOptions);
+  private static RequestWriter writeBaseRequest(RequestWriter writer) {
+    return writer.beginObject().name("apiVersion").value(2).name("apiVersionMinor").value(0);
   }
 
   /**
@@ -68,14 +52,19 @@ public class PaymentsUtil {
    *
    * <p>TODO: Check with your gateway on the parameters to pass and modify them in Constants.java.
    *
-   * @return Payment data tokenization for the CARD payment method.
-   * @throws JSONException
+   * @param writer writer positioned where the tokenization specification value starts.
+   * @return the writer, after the written specification.
    * @see <a href=
    *     "https://developers.google.com/pay/api/android/reference/object#PaymentMethodTokenizationSpecification">PaymentMethodTokenizationSpecification</a>
    */
-  private static JSONObject getGatewayTokenizationSpecification() throws JSONException {
-      JSONObject addGateway = new JSONObject().put("gateway", "example").put("gatewayMerchantId", "exampleGatewayMerchantId");
-      return new JSONObject().put("type", "PAYMENT_GATEWAY").put("parameters", addGateway);
+  private static RequestWriter writeGatewayTokenizationSpecification(RequestWriter writer) {
+      return writer.beginObject()
+              .name("type").value("PAYMENT_GATEWAY")
+              .name("parameters").beginObject()
+              .name("gateway").value("example")
+              .name("gatewayMerchantId").value("exampleGatewayMerchantId")
+              .endObject()
+              .endObject();
   }
 
   /**
@@ -83,12 +72,13 @@ public class PaymentsUtil {
    *
    * <p>TODO: Confirm card networks supported by your app and gateway & update in Constants.java.
    *
-   * @return Allowed card networks
+   * @param writer writer positioned where the allowed card networks value starts.
+   * @return the writer, after the written array.
    * @see <a
    *     href="https://developers.google.com/pay/api/android/reference/object#CardParameters">CardParameters</a>
    */
-  private static JSONArray getAllowedCardNetworks() {
-    return new JSONArray(SUPPORTED_NETWORKS);
+  private static RequestWriter writeAllowedCardNetworks(RequestWriter writer) {
+    return writeStrings(writer, SUPPORTED_NETWORKS);
   }
 
   /**
@@ -97,12 +87,21 @@ public class PaymentsUtil {
    * <p>TODO: Confirm your processor supports Android device tokens on your supported card networks
    * and make updates in Constants.java.
    *
-   * @return Allowed card authentication methods.
+   * @param writer writer positioned where the allowed auth methods value starts.
+   * @return the writer, after the written array.
    * @see <a
    *     href="https://developers.google.com/pay/api/android/reference/object#CardParameters">CardParameters</a>
    */
-  private static JSONArray getAllowedCardAuthMethods() {
-    return new JSONArray(SUPPORTED_METHODS);
+  private static RequestWriter writeAllowedCardAuthMethods(RequestWriter writer) {
+    return writeStrings(writer, SUPPORTED_METHODS);
+  }
+
+  private static RequestWriter writeStrings(RequestWriter writer, List<String> values) {
+    writer.beginArray();
+    for (int i = 0, size = values.size(); i < size; i++) {
+      writer.value(values.get(i));
+    }
+    return writer.endArray();
   }
 
   /**
@@ -111,109 +110,91 @@ public class PaymentsUtil {
    * <p>The provided properties are applicable to both an IsReadyToPayRequest and a
    * PaymentDataRequest.
    *
-   * @return A CARD PaymentMethod object describing accepted cards.
-   * @throws JSONException
+   * @param writer writer positioned where the payment method starts.
+   * @return the writer, left inside the open CARD PaymentMethod object.
    * @see <a
    *     href="https://developers.google.com/pay/api/android/reference/object#PaymentMethod">PaymentMethod</a>
    */
-  private static JSONObject getBaseCardPaymentMethod() throws JSONException {
-    JSONObject cardPaymentMethod = new JSONObject();
-    cardPaymentMethod.put("type", "CARD");
-
-    JSONObject parameters = new JSONObject();
-    parameters.put("allowedAuthMethods", getAllowedCardAuthMethods());
-    parameters.put("allowedCardNetworks", getAllowedCardNetworks());
-    cardPaymentMethod.put("parameters", parameters);
-
-    return cardPaymentMethod;
+  private static RequestWriter writeBaseCardPaymentMethodFields(RequestWriter writer) {
+    writer.beginObject().name("type").value("CARD").name("parameters").beginObject();
+    writeAllowedCardAuthMethods(writer.name("allowedAuthMethods"));
+    writeAllowedCardNetworks(writer.name("allowedCardNetworks"));
+    return writer.endObject();
   }
 
   /**
    * Describe the expected returned payment data for the CARD payment method
    *
-   * @return A CARD PaymentMethod describing accepted cards and optional fields.
-   * @throws JSONException
+   * @param writer writer positioned where the payment method starts.
+   * @return the writer, after the written CARD PaymentMethod.
    * @see <a
    *     href="https://developers.google.com/pay/api/android/reference/object#PaymentMethod">PaymentMethod</a>
    */
-  private JSONObject getCardPaymentMethod() throws JSONException {
-    JSONObject cardPaymentMethod = getBaseCardPaymentMethod();
-    cardPaymentMethod.put("tokenizationSpecification", getGatewayTokenizationSpecification());
-    return cardPaymentMethod;
+  private static RequestWriter writeCardPaymentMethod(RequestWriter writer) {
+    writeBaseCardPaymentMethodFields(writer);
+    return writeGatewayTokenizationSpecification(writer.name("tokenizationSpecification")).endObject();
   }
 
   /**
    * An object describing accepted forms of payment by your app, used to determine a viewer's
    * readiness to pay.
    *
-   * @return API version and payment methods supported by the app.
+   * @return API version and payment methods supported by the app, serialized as JSON.
    * @see <a
    *     href="https://developers.google.com/pay/api/android/reference/object#IsReadyToPayRequest">IsReadyToPayRequest</a>
    */
-  public static Optional<JSONObject> getIsReadyToPayRequest() {
-    try {
-      JSONObject isReadyToPayRequest = getBaseRequest();
-      isReadyToPayRequest.put("allowedPaymentMethods", new JSONArray().put(getBaseCardPaymentMethod()));
-
-      return Optional.of(isReadyToPayRequest);
-    } catch (JSONException e) {
-      return Optional.empty();
-    }
+  public static String getIsReadyToPayRequest() {
+    RequestWriter writer = writeBaseRequest(RequestWriter.obtain());
+    writeBaseCardPaymentMethodFields(writer.name("allowedPaymentMethods").beginArray()).endObject();
+    return writer.endArray().endObject().toString();
   }
 
   /**
    * Provide Google Pay API with a payment amount, currency, and amount status.
    *
-   * @return information about the requested payment.
-   * @throws JSONException
+   * @param writer writer positioned where the transaction info value starts.
+   * @return the writer, after the written transaction info.
    * @see <a
    *     href="https://developers.google.com/pay/api/android/reference/object#TransactionInfo">TransactionInfo</a>
    */
-  private JSONObject getTransactionInfo(String price) throws JSONException {
-    JSONObject transactionInfo = new JSONObject();
-    transactionInfo.put("totalPrice", price);
-    transactionInfo.put("totalPriceStatus", "FINAL");
-    transactionInfo.put("currencyCode", CURRENCY_CODE);
-
-    return transactionInfo;
+  private static RequestWriter writeTransactionInfo(RequestWriter writer, String price) {
+    return writer.beginObject()
+            .name("totalPrice").value(price)
+            .name("totalPriceStatus").value("FINAL")
+            .name("currencyCode").value(CURRENCY_CODE)
+            .endObject();
   }
 
   /**
    * Information about the merchant requesting payment information
    *
-   * @return Information about the merchant.
-   * @throws JSONException
+   * @param writer writer positioned where the merchant info value starts.
+   * @return the writer, after the written merchant info.
    * @see <a
    *     href="https://developers.google.com/pay/api/android/reference/object#MerchantInfo">MerchantInfo</a>
    */
-  private JSONObject getMerchantInfo() throws JSONException {
-    return new JSONObject().put("merchantName", "Example Merchant");
+  private static RequestWriter writeMerchantInfo(RequestWriter writer) {
+    return writer.beginObject().name("merchantName").value("Example Merchant").endObject();
   }
 
   /**
    * An object describing information requested in a Google Pay payment sheet
    *
-   * @return Payment data expected by your app.
+   * @return Payment data expected by your app, serialized as JSON.
    * @see <a
    *     href="https://developers.google.com/pay/api/android/reference/object#PaymentDataRequest">PaymentDataRequest</a>
    */
-  public Optional<JSONObject> getPaymentDataRequest(String price) {
-    try {
-      JSONObject paymentDataRequest = PaymentsUtil.getBaseRequest();
-      paymentDataRequest.put("allowedPaymentMethods", new JSONArray().put(getCardPaymentMethod()));
-      paymentDataRequest.put("transactionInfo", getTransactionInfo(price));
-      paymentDataRequest.put("merchantInfo", getMerchantInfo());
-
-      /* An optional shipping address requirement is a top-level property of the PaymentDataRequest
-      JSON object. */
-      paymentDataRequest.put("shippingAddressRequired", true);
-
-      JSONObject shippingAddressParameters = new JSONObject().put("phoneNumberRequired", false);
-
-      paymentDataRequest.put("shippingAddressParameters", shippingAddressParameters);
-      return Optional.of(paymentDataRequest);
-    } catch (JSONException e) {
-      return Optional.empty();
-    }
+  public static String getPaymentDataRequest(String price) {
+    RequestWriter writer = writeBaseRequest(RequestWriter.obtain());
+    writeCardPaymentMethod(writer.name("allowedPaymentMethods").beginArray()).endArray();
+    writeTransactionInfo(writer.name("transactionInfo"), price);
+    writeMerchantInfo(writer.name("merchantInfo"));
+
+    /* An optional shipping address requirement is a top-level property of the PaymentDataRequest
+    JSON object. */
+    writer.name("shippingAddressRequired").value(true);
+
+    writer.name("shippingAddressParameters").beginObject().name("phoneNumberRequired").value(false).endObject();
+    return writer.endObject().toString();
   }
 }
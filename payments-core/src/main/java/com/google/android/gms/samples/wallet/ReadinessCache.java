@@ -0,0 +1,128 @@
+package com.google.android.gms.samples.wallet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide cache of {@code isReadyToPay} results, one per environment.
+ * <p>
+ * Entries are keyed by the serialized IsReadyToPayRequest, which carries exactly the configured
+ * cards and auth methods. Callers asking for the same key while a check is running wait on the one
+ * in-flight call. Results are kept for the caller's TTL, failures are not cached. Every call that
+ * reaches the wallet is recorded as {@link CheckoutMetrics.Stage#IS_READY_TO_PAY}.
+ */
+public final class ReadinessCache {
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final EnumMap<PayUtils.TypeEnvironment, ReadinessCache> sInstances =
+            new EnumMap<>(PayUtils.TypeEnvironment.class);
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    private ReadinessCache() {}
+
+    public static ReadinessCache getInstance(PayUtils.TypeEnvironment environment) {
+        synchronized (sInstances) {
+            ReadinessCache cache = sInstances.get(environment);
+            if (cache == null) {
+                cache = new ReadinessCache();
+                sInstances.put(environment, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Delivers the cached readiness for {@code request}, joins the check already running for it,
+     * or starts a new one on {@code client} when there is none or the result is older than
+     * {@code ttlMillis}. A cached result is delivered on the calling thread.
+     */
+    public void get(WalletClient client, final String request, long ttlMillis, WalletClient.Callback<Boolean> callback) {
+        final Entry loading;
+        synchronized (this) {
+            Entry entry = mEntries.get(request);
+            if (entry != null && entry.waiting != null) {
+                entry.waiting.add(callback);
+                return;
+            }
+            if (entry == null || now() - entry.completedAt >= ttlMillis) {
+                loading = new Entry();
+                loading.waiting.add(callback);
+                mEntries.put(request, loading);
+            } else {
+                loading = null;
+            }
+            if (loading == null) {
+                callback.onResult(entry.ready);
+                return;
+            }
+        }
+
+        final long started = CheckoutMetrics.start();
+        try {
+            client.isReadyToPay(request, new WalletClient.Callback<Boolean>() {
+                @Override
+                public void onResult(Boolean ready) {
+                    CheckoutMetrics.success(CheckoutMetrics.Stage.IS_READY_TO_PAY, started);
+                    for (WalletClient.Callback<Boolean> waiting : completed(request, loading, ready)) {
+                        waiting.onResult(ready);
+                    }
+                }
+
+                @Override
+                public void onFailure(int statusCode, String message) {
+                    CheckoutMetrics.failure(CheckoutMetrics.Stage.IS_READY_TO_PAY, started, statusCode);
+                    for (WalletClient.Callback<Boolean> waiting : completed(request, loading, null)) {
+                        waiting.onFailure(statusCode, message);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // Such as a request the wallet rejects while parsing it. Without this the entry stays
+            // in flight forever and every later caller for the request waits on it.
+            CheckoutMetrics.failure(CheckoutMetrics.Stage.IS_READY_TO_PAY, started, WalletClient.STATUS_UNKNOWN);
+            for (WalletClient.Callback<Boolean> waiting : completed(request, loading, null)) {
+                waiting.onFailure(WalletClient.STATUS_UNKNOWN, String.valueOf(e));
+            }
+        }
+    }
+
+    public synchronized void invalidate(String request) {
+        mEntries.remove(request);
+    }
+
+    public synchronized void invalidateAll() {
+        mEntries.clear();
+    }
+
+    private synchronized List<WalletClient.Callback<Boolean>> completed(String request, Entry entry, Boolean ready) {
+        List<WalletClient.Callback<Boolean>> waiting = entry.waiting;
+        // Already completed, by a client that delivered a result and then threw.
+        if (waiting == null) return Collections.emptyList();
+        entry.waiting = null;
+        if (mEntries.get(request) == entry) {
+            if (ready != null) {
+                entry.ready = ready;
+                entry.completedAt = now();
+            } else {
+                mEntries.remove(request);
+            }
+        }
+        return waiting;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static final class Entry {
+        List<WalletClient.Callback<Boolean>> waiting = new ArrayList<>();
+        boolean ready;
+        long completedAt;
+    }
+}
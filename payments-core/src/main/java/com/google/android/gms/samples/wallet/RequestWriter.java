@@ -0,0 +1,147 @@
+package com.google.android.gms.samples.wallet;
+
+/**
+ * Streaming JSON writer for Google Pay API requests.
+ * <p>
+ * Writes straight into a per-thread reusable buffer instead of building a JSONObject tree and
+ * copying it into a String afterwards. Values are escaped as they are written.
+ */
+final class RequestWriter {
+    private static final ThreadLocal<RequestWriter> sWriter = new ThreadLocal<RequestWriter>() {
+        @Override
+        protected RequestWriter initialValue() {
+            return new RequestWriter();
+        }
+    };
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder mOut = new StringBuilder(1024);
+    private boolean mNeedsComma;
+
+    private RequestWriter() {}
+
+    /**
+     * @return the writer bound to the calling thread, emptied and ready for a new request.
+     */
+    static RequestWriter obtain() {
+        RequestWriter writer = sWriter.get();
+        writer.mOut.setLength(0);
+        writer.mNeedsComma = false;
+        return writer;
+    }
+
+    RequestWriter beginObject() {
+        separate();
+        mOut.append('{');
+        mNeedsComma = false;
+        return this;
+    }
+
+    RequestWriter endObject() {
+        mOut.append('}');
+        mNeedsComma = true;
+        return this;
+    }
+
+    RequestWriter beginArray() {
+        separate();
+        mOut.append('[');
+        mNeedsComma = false;
+        return this;
+    }
+
+    RequestWriter endArray() {
+        mOut.append(']');
+        mNeedsComma = true;
+        return this;
+    }
+
+    RequestWriter name(String name) {
+        separate();
+        string(name);
+        mOut.append(':');
+        mNeedsComma = false;
+        return this;
+    }
+
+    RequestWriter value(String value) {
+        separate();
+        if (value == null) mOut.append("null");
+        else string(value);
+        mNeedsComma = true;
+        return this;
+    }
+
+    RequestWriter value(long value) {
+        separate();
+        mOut.append(value);
+        mNeedsComma = true;
+        return this;
+    }
+
+    RequestWriter value(boolean value) {
+        separate();
+        mOut.append(value);
+        mNeedsComma = true;
+        return this;
+    }
+
+    /**
+     * Appends an already serialized fragment verbatim. The separator state is left untouched, so
+     * the fragment must carry its own leading comma if it needs one.
+     */
+    RequestWriter raw(CharSequence json) {
+        mOut.append(json);
+        return this;
+    }
+
+    /**
+     * Appends an already serialized value, such as a whole object or array, in value position.
+     */
+    RequestWriter rawValue(CharSequence json) {
+        separate();
+        mOut.append(json);
+        mNeedsComma = true;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return mOut.toString();
+    }
+
+    private void separate() {
+        if (mNeedsComma) mOut.append(',');
+    }
+
+    private void string(String value) {
+        StringBuilder out = mOut;
+        out.append('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') continue;
+            out.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\b': out.append("\\b"); break;
+                case '\f': out.append("\\f"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    out.append("\\u")
+                            .append(HEX[(c >> 12) & 0xF])
+                            .append(HEX[(c >> 8) & 0xF])
+                            .append(HEX[(c >> 4) & 0xF])
+                            .append(HEX[c & 0xF]);
+            }
+        }
+        out.append(value, start, length);
+        out.append('"');
+    }
+}
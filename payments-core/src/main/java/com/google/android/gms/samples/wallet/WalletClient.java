@@ -0,0 +1,47 @@
+package com.google.android.gms.samples.wallet;
+
+/**
+ * The calls the payment flow makes to the wallet, with requests and responses as serialized
+ * Google Pay API JSON.
+ * <p>
+ * On Android this is backed by the Play services PaymentsClient; on a server it can be backed by a
+ * stub or a simulator, so the request engine can be exercised without a device.
+ */
+public interface WalletClient {
+    /**
+     * Status reported when the user dismissed the payment sheet, same as Play services'
+     * {@code CommonStatusCodes.CANCELED}.
+     */
+    int STATUS_CANCELED = 16;
+
+    /**
+     * Status reported when a call did not complete before its deadline, same as Play services'
+     * {@code CommonStatusCodes.TIMEOUT}.
+     */
+    int STATUS_TIMEOUT = 15;
+
+    /**
+     * Status reported when the wallet gave no status of its own.
+     */
+    int STATUS_UNKNOWN = -1;
+
+    interface Callback<T> {
+        void onResult(T result);
+
+        void onFailure(int statusCode, String message);
+    }
+
+    /**
+     * @param request serialized IsReadyToPayRequest.
+     */
+    void isReadyToPay(String request, Callback<Boolean> callback);
+
+    /**
+     * Shows the payment sheet.
+     *
+     * @param request serialized PaymentDataRequest.
+     * @param callback receives the serialized PaymentData, or {@link #STATUS_CANCELED} when the
+     *     user backs out.
+     */
+    void loadPaymentData(String request, Callback<String> callback);
+}
@@ -0,0 +1,116 @@
+package com.google.android.gms.samples.wallet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * {@link CheckoutEventLog} writing to a temporary directory.
+ */
+public class CheckoutEventLogTest {
+    private static final long MAX_FILE_BYTES = 1 << 24;
+    private static final int PRODUCERS = 4;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void accountsForEveryEventRecordedWhileClosing() throws Exception {
+        // The race is narrow, a producer claiming a slot right after the last drain, so it is run
+        // many times over.
+        for (int run = 0; run < 200; run++) {
+            File file = new File(mFolder.getRoot(), "checkout-" + run + ".events");
+            final CheckoutEventLog log = new CheckoutEventLog(file, 64, MAX_FILE_BYTES, 1, 1);
+            final AtomicLong recorded = new AtomicLong();
+            final AtomicBoolean closed = new AtomicBoolean();
+            final CountDownLatch started = new CountDownLatch(PRODUCERS);
+            List<Thread> producers = new ArrayList<>();
+            for (int i = 0; i < PRODUCERS; i++) {
+                Thread producer = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                        // Keep recording for a while after close() returns.
+                        for (int i = 0; !closed.get() || i % 1000 != 0; i++) {
+                            log.record(CheckoutMetrics.Stage.TOKEN_PARSE, CheckoutEventLog.Outcome.SUCCESS, 0, i);
+                            recorded.incrementAndGet();
+                        }
+                    }
+                });
+                producer.start();
+                producers.add(producer);
+            }
+            started.await();
+            log.close();
+            closed.set(true);
+            for (Thread producer : producers) producer.join();
+
+            assertEquals("run " + run, recorded.get(), records(file) + log.getDropped());
+        }
+    }
+
+    @Test
+    public void movesAsideAFileOfAnotherVersion() throws Exception {
+        File file = new File(mFolder.getRoot(), "checkout.events");
+        byte[] other = ByteBuffer.allocate(CheckoutEventLog.HEADER_SIZE + 32)
+                .putInt(CheckoutEventLog.MAGIC).putInt(CheckoutEventLog.VERSION + 1).putInt(32).putInt(0)
+                .array();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(other);
+        } finally {
+            out.close();
+        }
+
+        CheckoutEventLog log = new CheckoutEventLog(file, 64, MAX_FILE_BYTES, 1, 1);
+        log.record(CheckoutMetrics.Stage.TOKEN_PARSE, CheckoutEventLog.Outcome.SUCCESS, 0, 1);
+        log.close();
+
+        assertEquals(0, log.getDropped());
+        assertEquals(1, records(file));
+        File[] aside = mFolder.getRoot().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File directory, String name) {
+                return name.startsWith("checkout.events.incompatible-");
+            }
+        });
+        assertNotNull(aside);
+        assertEquals(Arrays.toString(aside), 1, aside.length);
+        assertArrayEquals(other, Files.readAllBytes(aside[0].toPath()));
+    }
+
+    /**
+     * @return the records in {@code file}, after checking its header.
+     */
+    private static long records(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            assertEquals(CheckoutEventLog.MAGIC, in.readInt());
+            assertEquals(CheckoutEventLog.VERSION, in.readInt());
+            assertEquals(CheckoutEventLog.RECORD_SIZE, in.readInt());
+            long body = in.length() - CheckoutEventLog.HEADER_SIZE;
+            assertEquals(0, body % CheckoutEventLog.RECORD_SIZE);
+            return body / CheckoutEventLog.RECORD_SIZE;
+        } finally {
+            in.close();
+        }
+    }
+}
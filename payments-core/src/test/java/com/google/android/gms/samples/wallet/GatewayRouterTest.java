@@ -0,0 +1,151 @@
+package com.google.android.gms.samples.wallet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * {@link GatewayRouter} circuit breaking and exploration.
+ */
+public class GatewayRouterTest {
+    private static final long OPEN_MILLIS = 100;
+    private static final PaymentConfig BASE = new PaymentConfig.Builder()
+            .setMerchantName("Example Merchant")
+            .addCards(PayUtils.Cards.VISA)
+            .addPayMethods(PayUtils.PayMethod.PAN_ONLY)
+            .build();
+
+    @Test
+    public void opensACircuitAtTheThresholdOnceItHasEnoughSamples() {
+        GatewayRouter router = router("fast", "slow");
+        for (int i = 0; i < 3; i++) router.recordFailure("fast", 1000);
+        // Failing on every result, but short of the minimum samples.
+        assertEquals(GatewayRouter.State.CLOSED, router.getGateway("fast").getState());
+
+        router.recordFailure("fast", 1000);
+        assertEquals(GatewayRouter.State.OPEN, router.getGateway("fast").getState());
+        router.recordSuccess("slow", 5000);
+        for (int i = 0; i < 10; i++) assertEquals("slow", router.route().getName());
+    }
+
+    @Test
+    public void keepsACircuitClosedBelowTheThreshold() {
+        GatewayRouter router = new GatewayRouter.Builder(BASE)
+                .addGateway("fast", "1")
+                .setSmoothing(0.2)
+                .setFailureThreshold(0.5, 4)
+                .build();
+        // One in three fails, the average peaks around 0.41.
+        for (int i = 0; i < 10; i++) {
+            router.recordSuccess("fast", 1000);
+            router.recordSuccess("fast", 1000);
+            router.recordFailure("fast", 1000);
+        }
+        assertEquals(GatewayRouter.State.CLOSED, router.getGateway("fast").getState());
+    }
+
+    @Test
+    public void letsASingleProbeThroughAfterTheOpenPeriod() throws InterruptedException {
+        GatewayRouter router = router("failing", "healthy");
+        open(router, "failing");
+        router.recordSuccess("healthy", 5000);
+        assertEquals("healthy", router.route().getName());
+
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertEquals("failing", router.route().getName());
+        assertEquals(GatewayRouter.State.HALF_OPEN, router.getGateway("failing").getState());
+        for (int i = 0; i < 10; i++) assertEquals("healthy", router.route().getName());
+    }
+
+    @Test
+    public void closesTheCircuitWithFreshStatisticsOnASuccessfulProbe() throws InterruptedException {
+        GatewayRouter router = router("failing", "healthy");
+        open(router, "failing");
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertEquals("failing", router.route().getName());
+
+        router.recordSuccess("failing", 2000);
+        GatewayRouter.Gateway gateway = router.getGateway("failing");
+        assertEquals(GatewayRouter.State.CLOSED, gateway.getState());
+        assertEquals(0, gateway.getErrorRate(), 0);
+        assertEquals(2000, gateway.getLatencyMicros(), 0);
+        // One failure after the reset is below the minimum samples again.
+        router.recordFailure("failing", 2000);
+        assertEquals(GatewayRouter.State.CLOSED, gateway.getState());
+    }
+
+    @Test
+    public void reopensTheCircuitOnAFailedProbe() throws InterruptedException {
+        GatewayRouter router = router("failing", "healthy");
+        open(router, "failing");
+        router.recordSuccess("healthy", 5000);
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertEquals("failing", router.route().getName());
+
+        router.recordFailure("failing", 2000);
+        assertEquals(GatewayRouter.State.OPEN, router.getGateway("failing").getState());
+        for (int i = 0; i < 10; i++) assertEquals("healthy", router.route().getName());
+    }
+
+    @Test
+    public void fallsBackToTheGatewayClosestToItsProbeWhenAllAreOpen() throws InterruptedException {
+        GatewayRouter router = router("first", "second");
+        open(router, "first");
+        Thread.sleep(20);
+        open(router, "second");
+
+        assertEquals("first", router.route().getName());
+        assertEquals(GatewayRouter.State.OPEN, router.getGateway("first").getState());
+        assertEquals(GatewayRouter.State.OPEN, router.getGateway("second").getState());
+    }
+
+    @Test
+    public void routesTheExplorationShareToTheStalestGateway() {
+        GatewayRouter router = new GatewayRouter.Builder(BASE)
+                .addGateway("fast", "1")
+                .addGateway("slow", "2")
+                .setExploration(0.25)
+                .build();
+        router.recordSuccess("fast", 1000);
+        router.recordSuccess("slow", 5000);
+
+        int slow = 0;
+        for (int route = 1; route <= 100; route++) {
+            String name = router.route().getName();
+            if (route % 4 == 0) {
+                assertEquals("route " + route, "slow", name);
+                slow++;
+            } else {
+                assertEquals("route " + route, "fast", name);
+            }
+        }
+        assertEquals(25, slow);
+    }
+
+    @Test
+    public void triesGatewaysWithoutResultsFirst() {
+        GatewayRouter router = router("measured", "new");
+        router.recordSuccess("measured", 1000);
+        assertEquals("new", router.route().getName());
+        router.recordSuccess("new", 5000);
+        assertNotEquals("new", router.route().getName());
+    }
+
+    private static GatewayRouter router(String... gateways) {
+        GatewayRouter.Builder builder = new GatewayRouter.Builder(BASE)
+                .setSmoothing(0.5)
+                .setFailureThreshold(0.5, 4)
+                .setOpenPeriod(OPEN_MILLIS)
+                .setExploration(0);
+        for (int i = 0; i < gateways.length; i++) {
+            builder.addGateway(gateways[i], String.valueOf(i + 1));
+        }
+        return builder.build();
+    }
+
+    private static void open(GatewayRouter router, String gateway) {
+        for (int i = 0; i < 4; i++) router.recordFailure(gateway, 1000);
+        assertEquals(GatewayRouter.State.OPEN, router.getGateway(gateway).getState());
+    }
+}
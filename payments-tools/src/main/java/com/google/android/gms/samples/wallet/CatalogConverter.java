@@ -0,0 +1,236 @@
+package com.google.android.gms.samples.wallet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Build-time converter from a CSV or JSON product list to the binary {@link Catalog} format.
+ * <p>
+ * CSV input has a header row naming the {@code sku}, {@code name}, {@code price},
+ * {@code currency} and {@code image} columns, in any order; fields may be quoted. JSON input is an
+ * array of objects with the same members, the price given as a decimal string. SKUs must be ASCII.
+ * <pre>
+ * java com.google.android.gms.samples.wallet.CatalogConverter catalog.csv catalog.bin
+ * </pre>
+ */
+public final class CatalogConverter {
+    private static final byte[] ENTRY_PADDING = new byte[Catalog.PRICE - Catalog.CURRENCY - 3];
+
+    private CatalogConverter() {}
+
+    public static void main(String[] args) throws IOException, ParseException {
+        if (args.length != 2) {
+            System.err.println("usage: CatalogConverter <catalog.csv|catalog.json> <catalog.bin>");
+            System.exit(2);
+        }
+        File input = new File(args[0]);
+        File output = new File(args[1]);
+        String text = new String(readFully(input), Catalog.UTF_8);
+        List<Item> items = input.getName().endsWith(".json") ? readJson(text) : readCsv(text);
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) throw new IOException("Cannot create " + parent);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+        try {
+            write(items, out);
+        } finally {
+            out.close();
+        }
+        System.out.println("Wrote " + items.size() + " items to " + output);
+    }
+
+    static final class Item {
+        final String sku;
+        final String name;
+        final Money price;
+        final String image;
+
+        Item(String sku, String name, Money price, String image) {
+            this.sku = sku;
+            this.name = name;
+            this.price = price;
+            this.image = image;
+        }
+    }
+
+    static void write(List<Item> items, OutputStream out) throws IOException {
+        List<Item> sorted = new ArrayList<>(items);
+        Collections.sort(sorted, new Comparator<Item>() {
+            @Override
+            public int compare(Item a, Item b) {
+                return a.sku.compareTo(b.sku);
+            }
+        });
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        int textStart = Catalog.HEADER_SIZE + sorted.size() * Catalog.ENTRY_SIZE;
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(Catalog.MAGIC);
+        data.writeInt(Catalog.VERSION);
+        data.writeInt(sorted.size());
+        data.writeInt(0);
+        String previous = null;
+        for (Item item : sorted) {
+            if (item.sku.equals(previous)) throw new IOException("Duplicate SKU " + item.sku);
+            previous = item.sku;
+            for (int i = 0; i < item.sku.length(); i++) {
+                if (item.sku.charAt(i) > 0x7F) throw new IOException("SKU is not ASCII: " + item.sku);
+            }
+            byte[] sku = bytes(item.sku);
+            byte[] name = bytes(item.name);
+            byte[] image = bytes(item.image);
+            String currency = item.price.getCurrency().getCode();
+
+            data.writeInt(textStart + text.size());
+            data.writeShort(sku.length);
+            data.writeShort(name.length);
+            text.write(sku);
+            data.writeInt(textStart + text.size());
+            text.write(name);
+            data.writeInt(textStart + text.size());
+            text.write(image);
+            data.writeShort(image.length);
+            data.writeByte(currency.charAt(0));
+            data.writeByte(currency.charAt(1));
+            data.writeByte(currency.charAt(2));
+            data.write(ENTRY_PADDING);
+            data.writeLong(item.price.getMicros());
+        }
+        text.writeTo(data);
+        data.flush();
+    }
+
+    static List<Item> readCsv(String text) throws IOException {
+        List<List<String>> rows = parseCsv(text);
+        if (rows.isEmpty()) throw new IOException("Empty catalog");
+        List<String> header = rows.get(0);
+        int sku = column(header, "sku"), name = column(header, "name"), price = column(header, "price");
+        int currency = column(header, "currency"), image = column(header, "image");
+        List<Item> items = new ArrayList<>(rows.size() - 1);
+        for (int i = 1; i < rows.size(); i++) {
+            List<String> row = rows.get(i);
+            if (row.size() == 1 && row.get(0).isEmpty()) continue;
+            if (row.size() != header.size()) throw new IOException("Row " + (i + 1) + " has " + row.size() + " fields");
+            items.add(item(row.get(sku), row.get(name), row.get(price), row.get(currency), row.get(image)));
+        }
+        return items;
+    }
+
+    static List<Item> readJson(String text) throws IOException, ParseException {
+        JsonScanner in = new JsonScanner(text);
+        List<Item> items = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            String sku = null, name = null, price = null, currency = null, image = "";
+            in.beginObject();
+            while (in.hasNext()) {
+                String member = in.nextName();
+                if ("sku".equals(member)) sku = in.nextString();
+                else if ("name".equals(member)) name = in.nextString();
+                else if ("price".equals(member)) price = in.nextString();
+                else if ("currency".equals(member)) currency = in.nextString();
+                else if ("image".equals(member)) image = in.nextString();
+                else in.skipValue();
+            }
+            in.endObject();
+            if (sku == null || name == null || price == null || currency == null) {
+                throw new IOException("Item " + items.size() + " needs sku, name, price and currency");
+            }
+            items.add(item(sku, name, price, currency, image));
+        }
+        in.endArray();
+        return items;
+    }
+
+    private static Item item(String sku, String name, String price, String currency, String image) throws IOException {
+        PayUtils.TypeCurrency typeCurrency = PayUtils.TypeCurrency.fromCode(currency.trim());
+        if (typeCurrency == null) throw new IOException("Unknown currency " + currency + " for " + sku);
+        try {
+            return new Item(sku.trim(), name, Money.parse(price.trim(), typeCurrency), image.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad price for " + sku + ": " + e.getMessage());
+        }
+    }
+
+    private static int column(List<String> header, String name) throws IOException {
+        for (int i = 0; i < header.size(); i++) {
+            if (header.get(i).trim().equalsIgnoreCase(name)) return i;
+        }
+        throw new IOException("No " + name + " column");
+    }
+
+    /**
+     * Splits RFC 4180 CSV: comma separated, fields optionally quoted with doubled quotes inside.
+     */
+    private static List<List<String>> parseCsv(String text) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        List<String> row = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < length && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                row.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') i++;
+                row.add(field.toString());
+                field.setLength(0);
+                rows.add(row);
+                row = new ArrayList<>();
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) throw new IOException("Unterminated quoted field");
+        if (field.length() > 0 || !row.isEmpty()) {
+            row.add(field.toString());
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static byte[] bytes(String text) throws IOException {
+        byte[] bytes = text.getBytes(Catalog.UTF_8);
+        if (bytes.length > 0xFFFF) throw new IOException("Text longer than 65535 bytes: " + text.substring(0, 32));
+        return bytes;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
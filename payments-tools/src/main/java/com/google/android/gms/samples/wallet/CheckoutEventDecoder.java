@@ -0,0 +1,103 @@
+package com.google.android.gms.samples.wallet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Offline decoder for {@link CheckoutEventLog} files, printing one CSV row per event, oldest first.
+ * Given the log file, its rotated siblings are read too, so copy {@code checkout-events.bin*} out of
+ * the app's files directory together.
+ * <pre>
+ * java com.google.android.gms.samples.wallet.CheckoutEventDecoder checkout-events.bin &gt; checkout-events.csv
+ * </pre>
+ * Stages and outcomes unknown to this build are printed as their ordinals.
+ */
+public final class CheckoutEventDecoder {
+    private static final CheckoutMetrics.Stage[] STAGES = CheckoutMetrics.Stage.values();
+    private static final CheckoutEventLog.Outcome[] OUTCOMES = CheckoutEventLog.Outcome.values();
+
+    private CheckoutEventDecoder() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: CheckoutEventDecoder <checkout-events.bin>");
+            System.exit(2);
+        }
+        List<File> files = CheckoutEventLog.files(new File(args[0]));
+        if (files.isEmpty()) throw new IOException("No event log at " + args[0]);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        PrintStream out = System.out;
+        out.println("time,stage,outcome,status,durationMicros");
+        long events = 0;
+        for (File file : files) {
+            events += decode(file, format, out);
+        }
+        out.flush();
+        System.err.println("Decoded " + events + " events from " + files.size() + " files");
+    }
+
+    /**
+     * @return the number of events in {@code file}.
+     */
+    static long decode(File file, SimpleDateFormat format, PrintStream out) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != CheckoutEventLog.MAGIC) throw new IOException(file + " is not an event log");
+            int version = in.readInt();
+            if (version != CheckoutEventLog.VERSION) throw new IOException(file + ": unsupported version " + version);
+            int recordSize = in.readInt();
+            if (recordSize < CheckoutEventLog.RECORD_SIZE) throw new IOException(file + ": bad record size " + recordSize);
+            in.readInt();
+            byte[] extra = new byte[recordSize - CheckoutEventLog.RECORD_SIZE];
+            long events = 0;
+            Date date = new Date();
+            while (true) {
+                long time;
+                try {
+                    time = in.readLong();
+                } catch (EOFException e) {
+                    return events;
+                }
+                long durationMicros;
+                int status;
+                int stage;
+                int outcome;
+                try {
+                    durationMicros = in.readLong();
+                    status = in.readInt();
+                    in.readShort();
+                    stage = in.readUnsignedByte();
+                    outcome = in.readUnsignedByte();
+                    in.readFully(extra);
+                } catch (EOFException e) {
+                    // A record torn by the process dying mid-write.
+                    return events;
+                }
+                date.setTime(time);
+                out.print(format.format(date));
+                out.print(',');
+                out.print(stage < STAGES.length ? STAGES[stage].name() : String.valueOf(stage));
+                out.print(',');
+                out.print(outcome < OUTCOMES.length ? OUTCOMES[outcome].name() : String.valueOf(outcome));
+                out.print(',');
+                out.print(status);
+                out.print(',');
+                out.println(durationMicros);
+                events++;
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.google.android.gms.samples.wallet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Build-time generator of a {@link PaymentConfig} whose requests are serialized ahead of time.
+ * <p>
+ * Reads a properties file and writes {@code GeneratedPaymentConfig.java}. Its static parts, the
+ * IsReadyToPayRequest and the PaymentDataRequest up to {@code transactionInfo}, are string
+ * constants produced by the same serializer the runtime uses, so at runtime only the transaction
+ * is written.
+ * <pre>
+ * merchantName=Example Merchant
+ * cards=MASTERCARD,VISA
+ * authMethods=PAN_ONLY,CRYPTOGRAM_3DS
+ * parameter.gateway=example
+ * parameter.gatewayMerchantId=exampleGatewayMerchantId
+ * </pre>
+ * An optional {@code tokenization=DIRECT} switches from gateway to direct tokenization, with
+ * {@code parameter.protocolVersion} and {@code parameter.publicKey} as its parameters.
+ * Every {@code parameter.} entry also becomes a constant, {@code gatewayMerchantId} as
+ * {@code GATEWAY_MERCHANT_ID}. The optional {@code submissionEndpoint}, the backend URL payment
+ * tokens are posted to, becomes {@code SUBMISSION_ENDPOINT}, null when it is not set. The optional
+ * {@code prewarm=true} becomes {@code PREWARM}, whether to warm up the payments stack when the app
+ * starts, false when it is not set.
+ * <p>
+ * With gateway tokenization the optional {@code gateways}, a list of {@code name:merchantId}
+ * pairs, becomes {@code GATEWAYS}, the gateways checkouts are routed between. It defaults to the
+ * single gateway of {@code parameter.gateway} and {@code parameter.gatewayMerchantId}.
+ */
+public final class PaymentConfigGenerator {
+    static final String CLASS_NAME = "GeneratedPaymentConfig";
+    private static final String PARAMETER_PREFIX = "parameter.";
+
+    private PaymentConfigGenerator() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: PaymentConfigGenerator <payments.properties> <source output dir>");
+            System.exit(2);
+        }
+        File input = new File(args[0]);
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(input);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+
+        String packageName = PaymentConfigGenerator.class.getPackage().getName();
+        File directory = new File(args[1], packageName.replace('.', File.separatorChar));
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+        File output = new File(directory, CLASS_NAME + ".java");
+        Writer out = new OutputStreamWriter(new FileOutputStream(output), Catalog.UTF_8);
+        try {
+            out.write(generate(properties, packageName, input.getName()));
+        } finally {
+            out.close();
+        }
+        System.out.println("Wrote " + output);
+    }
+
+    static String generate(Properties properties, String packageName, String source) throws IOException {
+        String merchantName = properties.getProperty("merchantName");
+        if (merchantName == null) throw new IOException("merchantName is not set");
+        List<PayUtils.Cards> cards = new ArrayList<>();
+        for (String name : list(properties, "cards")) {
+            cards.add(valueOf(PayUtils.Cards.class, name));
+        }
+        List<PayUtils.PayMethod> methods = new ArrayList<>();
+        for (String name : list(properties, "authMethods")) {
+            methods.add(valueOf(PayUtils.PayMethod.class, name));
+        }
+        PayUtils.Tokenization tokenization = valueOf(PayUtils.Tokenization.class,
+                properties.getProperty("tokenization", PayUtils.Tokenization.PAYMENT_GATEWAY.name()));
+        List<String> parameters = new ArrayList<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(PARAMETER_PREFIX)) parameters.add(key.substring(PARAMETER_PREFIX.length()));
+        }
+        Collections.sort(parameters);
+        String submissionEndpoint = properties.getProperty("submissionEndpoint");
+        if (submissionEndpoint != null) {
+            try {
+                new URL(submissionEndpoint);
+            } catch (MalformedURLException e) {
+                throw new IOException("submissionEndpoint: " + e.getMessage());
+            }
+        }
+
+        String prewarm = properties.getProperty("prewarm", "false");
+        if (!"true".equals(prewarm) && !"false".equals(prewarm)) throw new IOException("prewarm is not true or false: " + prewarm);
+
+        List<String[]> gateways = gateways(properties, tokenization);
+
+        PaymentConfig.Builder builder = new PaymentConfig.Builder()
+                .setMerchantName(merchantName)
+                .setTokenization(tokenization)
+                .addCards(cards.toArray(new PayUtils.Cards[0]))
+                .addPayMethods(methods.toArray(new PayUtils.PayMethod[0]));
+        for (String parameter : parameters) {
+            builder.addParameter(parameter, properties.getProperty(PARAMETER_PREFIX + parameter));
+        }
+        PaymentConfig config = builder.build();
+        if (!config.isComplete()) throw new IOException("cards, authMethods and a parameter are required");
+
+        StringBuilder java = new StringBuilder(4096);
+        java.append("// Generated by PaymentConfigGenerator from ").append(source).append(". Do not edit.\n")
+                .append("package ").append(packageName).append(";\n\n")
+                .append("/**\n")
+                .append(" * Payment configuration decided at build time, with its requests serialized ahead of time.\n")
+                .append(" */\n")
+                .append("final class ").append(CLASS_NAME).append(" {\n")
+                .append("    static final String MERCHANT_NAME = ").append(literal(merchantName)).append(";\n");
+        for (String parameter : parameters) {
+            java.append("    static final String ").append(constantName(parameter)).append(" = ")
+                    .append(literal(properties.getProperty(PARAMETER_PREFIX + parameter))).append(";\n");
+        }
+        java.append("    static final String SUBMISSION_ENDPOINT = ")
+                .append(submissionEndpoint == null ? "null" : literal(submissionEndpoint)).append(";\n");
+        java.append("    static final boolean PREWARM = ").append(prewarm).append(";\n");
+        java.append("    static final String[][] GATEWAYS = {");
+        for (int i = 0; i < gateways.size(); i++) {
+            if (i > 0) java.append(',');
+            java.append("\n            {").append(literal(gateways.get(i)[0])).append(", ")
+                    .append(literal(gateways.get(i)[1])).append('}');
+        }
+        java.append(gateways.isEmpty() ? "};\n" : "\n    };\n");
+        java.append('\n')
+                .append("    static final String IS_READY_TO_PAY_REQUEST =\n            ")
+                .append(literal(config.getReadyToPayRequest())).append(";\n\n")
+                .append("    static final String PAYMENT_DATA_REQUEST_HEAD =\n            ")
+                .append(literal(config.getPaymentTemplate().getHead())).append(";\n\n")
+                .append("    static final PaymentConfig CONFIG = new PaymentConfig.Builder()\n")
+                .append("            .setMerchantName(MERCHANT_NAME)\n")
+                .append("            .setTokenization(PayUtils.Tokenization.").append(tokenization.name()).append(")\n")
+                .append("            .addCards(");
+        for (int i = 0; i < cards.size(); i++) {
+            if (i > 0) java.append(", ");
+            java.append("PayUtils.Cards.").append(cards.get(i).name());
+        }
+        java.append(")\n            .addPayMethods(");
+        for (int i = 0; i < methods.size(); i++) {
+            if (i > 0) java.append(", ");
+            java.append("PayUtils.PayMethod.").append(methods.get(i).name());
+        }
+        java.append(")\n");
+        for (String parameter : parameters) {
+            java.append("            .addParameter(").append(literal(parameter)).append(", ")
+                    .append(constantName(parameter)).append(")\n");
+        }
+        java.append("            .build(IS_READY_TO_PAY_REQUEST, PAYMENT_DATA_REQUEST_HEAD);\n\n")
+                .append("    private ").append(CLASS_NAME).append("() {}\n")
+                .append("}\n");
+        return java.toString();
+    }
+
+    private static List<String> list(Properties properties, String key) throws IOException {
+        String value = properties.getProperty(key);
+        if (value == null) throw new IOException(key + " is not set");
+        List<String> names = new ArrayList<>();
+        for (String name : value.split(",")) {
+            if (!name.trim().isEmpty()) names.add(name.trim());
+        }
+        return names;
+    }
+
+    /**
+     * @return the {@code gateways} as name and merchant ID pairs, empty with direct tokenization.
+     */
+    private static List<String[]> gateways(Properties properties, PayUtils.Tokenization tokenization) throws IOException {
+        List<String[]> gateways = new ArrayList<>();
+        String value = properties.getProperty("gateways");
+        if (tokenization != PayUtils.Tokenization.PAYMENT_GATEWAY) {
+            if (value != null) throw new IOException("gateways need PAYMENT_GATEWAY tokenization, not " + tokenization);
+            return gateways;
+        }
+        if (value == null) {
+            String gateway = properties.getProperty(PARAMETER_PREFIX + "gateway");
+            String merchantId = properties.getProperty(PARAMETER_PREFIX + "gatewayMerchantId");
+            if (gateway != null && merchantId != null) gateways.add(new String[] {gateway, merchantId});
+            return gateways;
+        }
+        for (String pair : list(properties, "gateways")) {
+            int colon = pair.indexOf(':');
+            if (colon <= 0 || colon == pair.length() - 1) throw new IOException("gateways entry is not name:merchantId: " + pair);
+            gateways.add(new String[] {pair.substring(0, colon).trim(), pair.substring(colon + 1).trim()});
+        }
+        if (gateways.isEmpty()) throw new IOException("gateways is empty");
+        return gateways;
+    }
+
+    private static <E extends Enum<E>> E valueOf(Class<E> type, String name) throws IOException {
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown " + type.getSimpleName() + " " + name);
+        }
+    }
+
+    /**
+     * {@code gatewayMerchantId} to {@code GATEWAY_MERCHANT_ID}.
+     */
+    static String constantName(String name) {
+        StringBuilder constant = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0 && Character.isLowerCase(name.charAt(i - 1))) constant.append('_');
+            constant.append(Character.isLetterOrDigit(c) && c < 0x80 ? Character.toUpperCase(c) : '_');
+        }
+        if (constant.length() == 0 || Character.isDigit(constant.charAt(0))) constant.insert(0, '_');
+        return constant.toString();
+    }
+
+    /**
+     * @return {@code value} as a Java string literal, with everything outside printable ASCII
+     *     escaped. Control characters get character escapes, such as {@code \n}, or octal ones,
+     *     never Unicode escapes: javac translates those before it reads the literal, so an escaped
+     *     line break would still end the line.
+     */
+    static String literal(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 16).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    literal.append('\\').append(c);
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                case '\r':
+                    literal.append("\\r");
+                    break;
+                case '\t':
+                    literal.append("\\t");
+                    break;
+                case '\b':
+                    literal.append("\\b");
+                    break;
+                case '\f':
+                    literal.append("\\f");
+                    break;
+                default:
+                    if (c >= 0x20 && c < 0x7F) {
+                        literal.append(c);
+                    } else if (c < 0x80) {
+                        // Three digits, so a digit after it is not read as part of the escape.
+                        literal.append(String.format("\\%03o", (int) c));
+                    } else {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    }
+                    break;
+            }
+        }
+        return literal.append('"').toString();
+    }
+}
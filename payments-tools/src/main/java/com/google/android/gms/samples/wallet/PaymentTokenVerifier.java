@@ -0,0 +1,554 @@
+package com.google.android.gms.samples.wallet;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECFieldFp;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.EllipticCurve;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Verifies and decrypts the PaymentMethodToken of a {@link PayUtils.Tokenization#DIRECT}
+ * checkout, the ECv2 protocol, on the merchant's own server instead of at a gateway.
+ * <ol>
+ * <li>The intermediate signing key must be signed by one of Google's root signing keys and must
+ * not have expired.</li>
+ * <li>The signed message must be signed by the intermediate key for this recipient.</li>
+ * <li>The message is decrypted with the recipient's private key: ECDH with the ephemeral public
+ * key, HKDF-SHA256 to a 256-bit AES key and a 256-bit HMAC key, tag check, then AES-CTR.</li>
+ * <li>The decrypted message must not have expired.</li>
+ * </ol>
+ * Root keys are parsed once when the verifier is built. Intermediate keys that passed verification
+ * are cached until they or the root key that signed them expire, so tokens signed by a known
+ * intermediate key skip its root signature check. The
+ * Signature, KeyAgreement, Mac and Cipher instances are kept per thread. Thread-safe; batches can
+ * be verified in parallel with {@link #decryptAll}.
+ * <p>
+ * For servers: uses {@link Base64}, which Android only has from API 26.
+ *
+ * @see <a href="https://developers.google.com/pay/api/android/guides/resources/payment-data-cryptography">Payment data cryptography</a>
+ */
+public final class PaymentTokenVerifier {
+    public static final String PROTOCOL_VERSION = "ECv2";
+
+    private static final String SENDER_ID = "Google";
+    private static final int SYMMETRIC_KEY_SIZE = 32;
+    private static final int MAC_KEY_SIZE = 32;
+    private static final byte[] HKDF_SALT = new byte[32];
+    private static final byte[] HKDF_INFO = SENDER_ID.getBytes(Catalog.UTF_8);
+    private static final byte[] ZERO_IV = new byte[16];
+    private static final int MAX_CACHED_INTERMEDIATE_KEYS = 256;
+
+    private static final ThreadLocal<Primitives> sPrimitives = new ThreadLocal<Primitives>() {
+        @Override
+        protected Primitives initialValue() {
+            try {
+                return new Primitives();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("ECv2 primitives are not available", e);
+            }
+        }
+    };
+
+    private final String mRecipientId;
+    private final List<RootKey> mRootKeys;
+    private final List<ECPrivateKey> mPrivateKeys;
+    private final ConcurrentMap<String, IntermediateKey> mIntermediateKeys = new ConcurrentHashMap<>();
+
+    private PaymentTokenVerifier(Builder builder) {
+        if (builder.mRecipientId == null) throw new IllegalStateException("No recipient id");
+        if (builder.mRootKeys.isEmpty()) throw new IllegalStateException("No root signing key");
+        if (builder.mPrivateKeys.isEmpty()) throw new IllegalStateException("No recipient private key");
+        mRecipientId = builder.mRecipientId;
+        mRootKeys = Collections.unmodifiableList(new ArrayList<>(builder.mRootKeys));
+        mPrivateKeys = Collections.unmodifiableList(new ArrayList<>(builder.mPrivateKeys));
+    }
+
+    /**
+     * @param token the PaymentMethodToken, the {@code tokenizationData.token} string of the
+     *     PaymentData, see {@link PaymentToken#getToken()}.
+     * @return the decrypted message: JSON with {@code paymentMethodDetails}.
+     * @throws GeneralSecurityException when the token is malformed, is not signed for this
+     *     recipient, cannot be decrypted with any of its keys or has expired.
+     */
+    public String decrypt(String token) throws GeneralSecurityException {
+        Primitives primitives = sPrimitives.get();
+        Token parsed = Token.parse(token);
+        if (!PROTOCOL_VERSION.equals(parsed.protocolVersion)) {
+            throw new GeneralSecurityException("Unsupported protocol version " + parsed.protocolVersion);
+        }
+        long now = System.currentTimeMillis();
+        PublicKey intermediateKey = intermediateKey(parsed, now, primitives);
+        byte[] signed = signedBytes(SENDER_ID, mRecipientId, PROTOCOL_VERSION, parsed.signedMessage);
+        if (!verify(primitives.signature, intermediateKey, signed, parsed.signature)) {
+            throw new GeneralSecurityException("Invalid message signature");
+        }
+
+        SignedMessage message = SignedMessage.parse(parsed.signedMessage);
+        String plaintext = null;
+        for (ECPrivateKey privateKey : mPrivateKeys) {
+            plaintext = decrypt(message, privateKey, primitives);
+            if (plaintext != null) break;
+        }
+        if (plaintext == null) throw new GeneralSecurityException("Cannot decrypt the message with any recipient key");
+        if (messageExpiration(plaintext) <= now) throw new GeneralSecurityException("Expired payment method token");
+        return plaintext;
+    }
+
+    /**
+     * Decrypts a batch of tokens on {@code executor}, in one task per slice of the batch.
+     *
+     * @param parallelism how many tasks to split the batch into, usually the executor's threads.
+     * @return one result per token, in order.
+     */
+    public List<Result> decryptAll(final List<String> tokens, ExecutorService executor, int parallelism)
+            throws InterruptedException {
+        final Result[] results = new Result[tokens.size()];
+        int slices = Math.max(1, Math.min(parallelism, tokens.size()));
+        List<Callable<Void>> tasks = new ArrayList<>(slices);
+        for (int slice = 0; slice < slices; slice++) {
+            final int from = (int) ((long) tokens.size() * slice / slices);
+            final int to = (int) ((long) tokens.size() * (slice + 1) / slices);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = from; i < to; i++) {
+                        try {
+                            results[i] = new Result(decrypt(tokens.get(i)), null);
+                        } catch (GeneralSecurityException e) {
+                            results[i] = new Result(null, e);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> done : executor.invokeAll(tasks)) {
+            try {
+                done.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    public static final class Result {
+        private final String mMessage;
+        private final GeneralSecurityException mError;
+
+        Result(String message, GeneralSecurityException error) {
+            mMessage = message;
+            mError = error;
+        }
+
+        public boolean isValid() {
+            return mError == null;
+        }
+
+        /**
+         * @return the decrypted message, null when the token was rejected.
+         */
+        public String getMessage() {
+            return mMessage;
+        }
+
+        /**
+         * @return why the token was rejected, null when it is valid.
+         */
+        public GeneralSecurityException getError() {
+            return mError;
+        }
+    }
+
+    private PublicKey intermediateKey(Token token, long now, Primitives primitives) throws GeneralSecurityException {
+        IntermediateKey cached = mIntermediateKeys.get(token.signedKey);
+        if (cached == null) {
+            byte[] signed = signedBytes(SENDER_ID, PROTOCOL_VERSION, token.signedKey);
+            // The latest expiration among the live root keys that signed it, 0 for none.
+            long rootExpiration = 0;
+            for (RootKey root : mRootKeys) {
+                if (root.expiration <= now || root.expiration <= rootExpiration) continue;
+                for (String signature : token.signedKeySignatures) {
+                    if (verify(primitives.signature, root.key, signed, signature)) {
+                        rootExpiration = root.expiration;
+                        break;
+                    }
+                }
+            }
+            if (rootExpiration == 0) throw new GeneralSecurityException("Intermediate signing key is not signed by a root key");
+            IntermediateKey parsed = IntermediateKey.parse(token.signedKey, primitives.keyFactory);
+            // A cache hit checks this expiration only, so it has to cover the root key as well.
+            cached = new IntermediateKey(parsed.key, Math.min(parsed.expiration, rootExpiration));
+            if (mIntermediateKeys.size() >= MAX_CACHED_INTERMEDIATE_KEYS) mIntermediateKeys.clear();
+            mIntermediateKeys.put(token.signedKey, cached);
+        }
+        if (cached.expiration <= now) throw new GeneralSecurityException("Expired intermediate signing key");
+        return cached.key;
+    }
+
+    /**
+     * @return the plaintext, or null when the tag does not match, the message being for another key.
+     */
+    private static String decrypt(SignedMessage message, ECPrivateKey privateKey, Primitives primitives)
+            throws GeneralSecurityException {
+        byte[] ephemeral = decode(message.ephemeralPublicKey);
+        primitives.keyAgreement.init(privateKey);
+        primitives.keyAgreement.doPhase(uncompressedPoint(ephemeral, privateKey.getParams(), primitives.keyFactory), true);
+        byte[] shared = primitives.keyAgreement.generateSecret();
+
+        byte[] ikm = new byte[ephemeral.length + shared.length];
+        System.arraycopy(ephemeral, 0, ikm, 0, ephemeral.length);
+        System.arraycopy(shared, 0, ikm, ephemeral.length, shared.length);
+        byte[] keys = hkdfSha256(primitives.mac, ikm, SYMMETRIC_KEY_SIZE + MAC_KEY_SIZE);
+
+        byte[] encrypted = decode(message.encryptedMessage);
+        primitives.mac.init(new SecretKeySpec(keys, SYMMETRIC_KEY_SIZE, MAC_KEY_SIZE, "HmacSHA256"));
+        if (!MessageDigest.isEqual(primitives.mac.doFinal(encrypted), decode(message.tag))) return null;
+
+        primitives.cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(keys, 0, SYMMETRIC_KEY_SIZE, "AES"),
+                new IvParameterSpec(ZERO_IV));
+        return new String(primitives.cipher.doFinal(encrypted), Catalog.UTF_8);
+    }
+
+    /**
+     * RFC 5869 HKDF with a zero salt and {@code info} "Google".
+     */
+    private static byte[] hkdfSha256(Mac mac, byte[] ikm, int length) throws GeneralSecurityException {
+        mac.init(new SecretKeySpec(HKDF_SALT, "HmacSHA256"));
+        byte[] prk = mac.doFinal(ikm);
+        mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+        byte[] out = new byte[length];
+        byte[] block = new byte[0];
+        for (int offset = 0, counter = 1; offset < length; counter++) {
+            mac.update(block);
+            mac.update(HKDF_INFO);
+            mac.update((byte) counter);
+            block = mac.doFinal();
+            int n = Math.min(block.length, length - offset);
+            System.arraycopy(block, 0, out, offset, n);
+            offset += n;
+        }
+        return out;
+    }
+
+    private static PublicKey uncompressedPoint(byte[] encoded, ECParameterSpec params, KeyFactory keyFactory)
+            throws GeneralSecurityException {
+        int size = (params.getCurve().getField().getFieldSize() + 7) / 8;
+        if (encoded.length != 1 + 2 * size || encoded[0] != 4) {
+            throw new GeneralSecurityException("Ephemeral public key is not an uncompressed point");
+        }
+        BigInteger x = new BigInteger(1, Arrays.copyOfRange(encoded, 1, 1 + size));
+        BigInteger y = new BigInteger(1, Arrays.copyOfRange(encoded, 1 + size, encoded.length));
+        checkOnCurve(x, y, params.getCurve());
+        return keyFactory.generatePublic(new ECPublicKeySpec(new ECPoint(x, y), params));
+    }
+
+    /**
+     * Rejects points off the curve, which would leak the private key through invalid-curve
+     * attacks on providers that do not check.
+     */
+    private static void checkOnCurve(BigInteger x, BigInteger y, EllipticCurve curve) throws GeneralSecurityException {
+        BigInteger p = ((ECFieldFp) curve.getField()).getP();
+        if (x.compareTo(p) >= 0 || y.compareTo(p) >= 0) throw new GeneralSecurityException("Ephemeral point out of range");
+        BigInteger lhs = y.multiply(y).mod(p);
+        BigInteger rhs = x.multiply(x).add(curve.getA()).multiply(x).add(curve.getB()).mod(p);
+        if (!lhs.equals(rhs)) throw new GeneralSecurityException("Ephemeral point is not on the curve");
+    }
+
+    private static boolean verify(Signature signature, PublicKey key, byte[] signed, String encodedSignature)
+            throws GeneralSecurityException {
+        signature.initVerify(key);
+        signature.update(signed);
+        try {
+            return signature.verify(decode(encodedSignature));
+        } catch (SignatureException e) {
+            // Malformed DER is just a signature that does not verify.
+            return false;
+        }
+    }
+
+    /**
+     * @return every chunk as a 4-byte little-endian length followed by its UTF-8 bytes.
+     */
+    static byte[] signedBytes(String... chunks) {
+        byte[][] bytes = new byte[chunks.length][];
+        int length = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            bytes[i] = chunks[i].getBytes(Catalog.UTF_8);
+            length += 4 + bytes[i].length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        for (byte[] chunk : bytes) {
+            out.putInt(chunk.length).put(chunk);
+        }
+        return out.array();
+    }
+
+    private static byte[] decode(String base64) throws GeneralSecurityException {
+        if (base64 == null) throw new GeneralSecurityException("Missing token field");
+        try {
+            return Base64.getDecoder().decode(base64);
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Invalid base64", e);
+        }
+    }
+
+    private static long messageExpiration(String message) throws GeneralSecurityException {
+        try {
+            JsonScanner scanner = new JsonScanner(message);
+            String expiration = null;
+            scanner.beginObject();
+            while (scanner.hasNext()) {
+                if ("messageExpiration".equals(scanner.nextName())) expiration = scanner.nextString();
+                else scanner.skipValue();
+            }
+            scanner.endObject();
+            return parseMillis(expiration);
+        } catch (ParseException e) {
+            throw new GeneralSecurityException("Malformed decrypted message", e);
+        }
+    }
+
+    private static long parseMillis(String value) throws GeneralSecurityException {
+        if (value == null) throw new GeneralSecurityException("Missing expiration");
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new GeneralSecurityException("Invalid expiration " + value, e);
+        }
+    }
+
+    /**
+     * The members of a PaymentMethodToken.
+     */
+    private static final class Token {
+        String protocolVersion;
+        String signature;
+        String signedKey;
+        final List<String> signedKeySignatures = new ArrayList<>(1);
+        String signedMessage;
+
+        static Token parse(String json) throws GeneralSecurityException {
+            Token token = new Token();
+            try {
+                JsonScanner scanner = new JsonScanner(json);
+                scanner.beginObject();
+                while (scanner.hasNext()) {
+                    String name = scanner.nextName();
+                    if ("protocolVersion".equals(name)) token.protocolVersion = scanner.nextString();
+                    else if ("signature".equals(name)) token.signature = scanner.nextString();
+                    else if ("signedMessage".equals(name)) token.signedMessage = scanner.nextString();
+                    else if ("intermediateSigningKey".equals(name)) token.readIntermediateSigningKey(scanner);
+                    else scanner.skipValue();
+                }
+                scanner.endObject();
+            } catch (ParseException e) {
+                throw new GeneralSecurityException("Malformed payment method token", e);
+            }
+            if (token.signature == null || token.signedKey == null || token.signedMessage == null
+                    || token.signedKeySignatures.isEmpty()) {
+                throw new GeneralSecurityException("Incomplete payment method token");
+            }
+            return token;
+        }
+
+        private void readIntermediateSigningKey(JsonScanner scanner) throws ParseException {
+            scanner.beginObject();
+            while (scanner.hasNext()) {
+                String name = scanner.nextName();
+                if ("signedKey".equals(name)) {
+                    signedKey = scanner.nextString();
+                } else if ("signatures".equals(name)) {
+                    scanner.beginArray();
+                    while (scanner.hasNext()) signedKeySignatures.add(scanner.nextString());
+                    scanner.endArray();
+                } else {
+                    scanner.skipValue();
+                }
+            }
+            scanner.endObject();
+        }
+    }
+
+    private static final class SignedMessage {
+        String encryptedMessage;
+        String ephemeralPublicKey;
+        String tag;
+
+        static SignedMessage parse(String json) throws GeneralSecurityException {
+            SignedMessage message = new SignedMessage();
+            try {
+                JsonScanner scanner = new JsonScanner(json);
+                scanner.beginObject();
+                while (scanner.hasNext()) {
+                    String name = scanner.nextName();
+                    if ("encryptedMessage".equals(name)) message.encryptedMessage = scanner.nextString();
+                    else if ("ephemeralPublicKey".equals(name)) message.ephemeralPublicKey = scanner.nextString();
+                    else if ("tag".equals(name)) message.tag = scanner.nextString();
+                    else scanner.skipValue();
+                }
+                scanner.endObject();
+            } catch (ParseException e) {
+                throw new GeneralSecurityException("Malformed signed message", e);
+            }
+            return message;
+        }
+    }
+
+    private static final class IntermediateKey {
+        final PublicKey key;
+        final long expiration;
+
+        IntermediateKey(PublicKey key, long expiration) {
+            this.key = key;
+            this.expiration = expiration;
+        }
+
+        static IntermediateKey parse(String signedKey, KeyFactory keyFactory) throws GeneralSecurityException {
+            String keyValue = null, expiration = null;
+            try {
+                JsonScanner scanner = new JsonScanner(signedKey);
+                scanner.beginObject();
+                while (scanner.hasNext()) {
+                    String name = scanner.nextName();
+                    if ("keyValue".equals(name)) keyValue = scanner.nextString();
+                    else if ("keyExpiration".equals(name)) expiration = scanner.nextString();
+                    else scanner.skipValue();
+                }
+                scanner.endObject();
+            } catch (ParseException e) {
+                throw new GeneralSecurityException("Malformed intermediate signing key", e);
+            }
+            return new IntermediateKey(keyFactory.generatePublic(new X509EncodedKeySpec(decode(keyValue))), parseMillis(expiration));
+        }
+    }
+
+    private static final class RootKey {
+        final PublicKey key;
+        final long expiration;
+
+        RootKey(PublicKey key, long expiration) {
+            this.key = key;
+            this.expiration = expiration;
+        }
+    }
+
+    private static final class Primitives {
+        final Signature signature = Signature.getInstance("SHA256withECDSA");
+        final KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH");
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        final Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        final KeyFactory keyFactory = KeyFactory.getInstance("EC");
+
+        Primitives() throws GeneralSecurityException {}
+    }
+
+    public static final class Builder {
+        private String mRecipientId;
+        private final List<RootKey> mRootKeys = new ArrayList<>();
+        private final List<ECPrivateKey> mPrivateKeys = new ArrayList<>();
+
+        /**
+         * @param recipientId {@code merchant:} followed by the Google merchant ID.
+         */
+        public Builder setRecipientId(String recipientId) {
+            mRecipientId = recipientId;
+            return this;
+        }
+
+        /**
+         * Adds the ECv2 keys of Google's root signing keys document, as published for the
+         * environment. Keys of other protocol versions are skipped.
+         */
+        public Builder addRootSigningKeys(String keysJson) throws GeneralSecurityException {
+            try {
+                JsonScanner scanner = new JsonScanner(keysJson);
+                scanner.beginObject();
+                while (scanner.hasNext()) {
+                    if (!"keys".equals(scanner.nextName())) {
+                        scanner.skipValue();
+                        continue;
+                    }
+                    scanner.beginArray();
+                    while (scanner.hasNext()) readRootKey(scanner);
+                    scanner.endArray();
+                }
+                scanner.endObject();
+            } catch (ParseException e) {
+                throw new GeneralSecurityException("Malformed root signing keys", e);
+            }
+            return this;
+        }
+
+        /**
+         * @param keyValue base64 X.509 encoding of an ECv2 root signing key.
+         * @param expirationMillis when the key stops being trusted, in milliseconds since the epoch.
+         */
+        public Builder addRootSigningKey(String keyValue, long expirationMillis) throws GeneralSecurityException {
+            PublicKey key = KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(decode(keyValue)));
+            mRootKeys.add(new RootKey(key, expirationMillis));
+            return this;
+        }
+
+        /**
+         * Adds a key the messages may be encrypted for. Add the previous key too while rotating.
+         *
+         * @param pkcs8 base64 PKCS #8 encoding of a NIST P-256 private key.
+         */
+        public Builder addRecipientPrivateKey(String pkcs8) throws GeneralSecurityException {
+            PrivateKey key = KeyFactory.getInstance("EC").generatePrivate(new PKCS8EncodedKeySpec(decode(pkcs8)));
+            if (!(key instanceof ECPrivateKey)) throw new GeneralSecurityException("Not an EC private key");
+            mPrivateKeys.add((ECPrivateKey) key);
+            return this;
+        }
+
+        public PaymentTokenVerifier build() throws GeneralSecurityException {
+            return new PaymentTokenVerifier(this);
+        }
+
+        private void readRootKey(JsonScanner scanner) throws ParseException, GeneralSecurityException {
+            String keyValue = null, protocolVersion = null, expiration = null;
+            scanner.beginObject();
+            while (scanner.hasNext()) {
+                String name = scanner.nextName();
+                if ("keyValue".equals(name)) keyValue = scanner.nextString();
+                else if ("protocolVersion".equals(name)) protocolVersion = scanner.nextString();
+                else if ("keyExpiration".equals(name)) expiration = scanner.nextString();
+                else scanner.skipValue();
+            }
+            scanner.endObject();
+            if (PROTOCOL_VERSION.equals(protocolVersion)) addRootSigningKey(keyValue, parseMillis(expiration));
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.google.android.gms.samples.wallet;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link WalletClient} that answers from a model of the wallet instead of Play services, for load
+ * tests and server-side runs of the payment flow.
+ * <p>
+ * Every call is checked the way the wallet would check it: the request must be well-formed JSON,
+ * and a PaymentDataRequest must carry a {@code transactionInfo} with a {@code totalPrice}.
+ * Malformed requests fail with {@link #STATUS_DEVELOPER_ERROR}. Each call then draws its latency
+ * and outcome, cancel or one of the configured failure statuses, and delivers it on the
+ * scheduler after that latency.
+ * <p>
+ * The draws are a pure function of the seed and the call's sequence number, so runs with the same
+ * seed make the same sequence of draws; thread interleaving only decides which call gets which.
+ */
+public final class SimulatedWalletClient implements WalletClient {
+    /**
+     * {@code CommonStatusCodes.NETWORK_ERROR}.
+     */
+    public static final int STATUS_NETWORK_ERROR = 7;
+
+    /**
+     * {@code CommonStatusCodes.INTERNAL_ERROR}.
+     */
+    public static final int STATUS_INTERNAL_ERROR = 8;
+
+    /**
+     * {@code CommonStatusCodes.DEVELOPER_ERROR}, reported by the wallet for an invalid request.
+     */
+    public static final int STATUS_DEVELOPER_ERROR = 10;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final ScheduledExecutorService mScheduler;
+    private final long mSeed;
+    private final Latency mReadinessLatency;
+    private final Latency mPaymentLatency;
+    private final boolean mReady;
+    private final double mCancelRate;
+    private final int[] mFailureStatuses;
+    private final double[] mFailureRates;
+    private final AtomicLong mCalls = new AtomicLong();
+
+    private SimulatedWalletClient(Builder builder) {
+        mScheduler = builder.mScheduler;
+        mSeed = builder.mSeed;
+        mReadinessLatency = builder.mReadinessLatency;
+        mPaymentLatency = builder.mPaymentLatency;
+        mReady = builder.mReady;
+        mCancelRate = builder.mCancelRate;
+        mFailureStatuses = new int[builder.mFailureStatuses.size()];
+        mFailureRates = new double[mFailureStatuses.length];
+        for (int i = 0; i < mFailureStatuses.length; i++) {
+            mFailureStatuses[i] = builder.mFailureStatuses.get(i);
+            mFailureRates[i] = builder.mFailureRates.get(i);
+        }
+    }
+
+    @Override
+    public void isReadyToPay(String request, final Callback<Boolean> callback) {
+        final Draw draw = new Draw(mSeed + GOLDEN_GAMMA * mCalls.getAndIncrement());
+        final String error = check(request, false);
+        schedule(mReadinessLatency.sample(draw), new Runnable() {
+            @Override
+            public void run() {
+                if (error != null) {
+                    callback.onFailure(STATUS_DEVELOPER_ERROR, error);
+                    return;
+                }
+                int status = failure(draw);
+                if (status != 0) callback.onFailure(status, "Simulated failure");
+                else callback.onResult(mReady);
+            }
+        });
+    }
+
+    @Override
+    public void loadPaymentData(String request, final Callback<String> callback) {
+        final Draw draw = new Draw(mSeed + GOLDEN_GAMMA * mCalls.getAndIncrement());
+        final String error = check(request, true);
+        schedule(mPaymentLatency.sample(draw), new Runnable() {
+            @Override
+            public void run() {
+                if (error != null) {
+                    callback.onFailure(STATUS_DEVELOPER_ERROR, error);
+                    return;
+                }
+                if (draw.next() < mCancelRate) {
+                    callback.onFailure(STATUS_CANCELED, "Simulated cancel");
+                    return;
+                }
+                int status = failure(draw);
+                if (status != 0) callback.onFailure(status, "Simulated failure");
+                else callback.onResult(paymentData(draw));
+            }
+        });
+    }
+
+    /**
+     * @return the number of calls made so far.
+     */
+    public long getCallCount() {
+        return mCalls.get();
+    }
+
+    private void schedule(long latencyMicros, Runnable delivery) {
+        mScheduler.schedule(delivery, latencyMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private int failure(Draw draw) {
+        double value = draw.next();
+        for (int i = 0; i < mFailureRates.length; i++) {
+            if (value < mFailureRates[i]) return mFailureStatuses[i];
+            value -= mFailureRates[i];
+        }
+        return 0;
+    }
+
+    /**
+     * @return why the request would be rejected, or null when it is acceptable.
+     */
+    private static String check(String request, boolean payment) {
+        try {
+            JsonScanner scanner = new JsonScanner(request);
+            boolean hasTotalPrice = false;
+            scanner.beginObject();
+            while (scanner.hasNext()) {
+                String name = scanner.nextName();
+                if (payment && "transactionInfo".equals(name)) hasTotalPrice = hasTotalPrice(scanner);
+                else scanner.skipValue();
+            }
+            scanner.endObject();
+            if (payment && !hasTotalPrice) return "transactionInfo.totalPrice is missing";
+            return null;
+        } catch (ParseException e) {
+            return "Malformed request: " + e.getMessage();
+        }
+    }
+
+    private static boolean hasTotalPrice(JsonScanner scanner) throws ParseException {
+        boolean found = false;
+        scanner.beginObject();
+        while (scanner.hasNext()) {
+            String name = scanner.nextName();
+            if ("totalPrice".equals(name)) found = !scanner.nextString().isEmpty();
+            else scanner.skipValue();
+        }
+        scanner.endObject();
+        return found;
+    }
+
+    private static String paymentData(Draw draw) {
+        String token = RequestWriter.obtain()
+                .beginObject()
+                .name("signature").value(Long.toHexString(draw.nextLong()))
+                .name("protocolVersion").value("ECv2")
+                .name("signedMessage").value(Long.toHexString(draw.nextLong()) + Long.toHexString(draw.nextLong()))
+                .endObject()
+                .toString();
+        String cardDetails = String.valueOf(1000 + (int) (draw.next() * 9000));
+        return RequestWriter.obtain()
+                .beginObject()
+                .name("apiVersion").value(2)
+                .name("apiVersionMinor").value(0)
+                .name("paymentMethodData").beginObject()
+                .name("description").value("Visa \u2022\u2022\u2022\u2022 " + cardDetails)
+                .name("tokenizationData").beginObject()
+                .name("type").value("PAYMENT_GATEWAY")
+                .name("token").value(token)
+                .endObject()
+                .name("type").value("CARD")
+                .name("info").beginObject()
+                .name("cardNetwork").value("VISA")
+                .name("cardDetails").value(cardDetails)
+                .endObject()
+                .endObject()
+                .endObject()
+                .toString();
+    }
+
+    /**
+     * Distribution of the time a call takes before its outcome is delivered.
+     */
+    public abstract static class Latency {
+        public static final Latency NONE = constant(0);
+
+        Latency() {}
+
+        public static Latency constant(final long micros) {
+            return new Latency() {
+                @Override
+                long sample(Draw draw) {
+                    return micros;
+                }
+            };
+        }
+
+        public static Latency uniform(final long minMicros, final long maxMicros) {
+            return new Latency() {
+                @Override
+                long sample(Draw draw) {
+                    return minMicros + (long) (draw.next() * (maxMicros - minMicros));
+                }
+            };
+        }
+
+        /**
+         * Log-normal latency, the usual shape of a remote call: most calls near the median and a
+         * long tail reaching {@code p99Micros} at the 99th percentile.
+         */
+        public static Latency logNormal(long medianMicros, long p99Micros) {
+            final double mu = Math.log(medianMicros);
+            // 2.326 is the standard normal quantile at the 99th percentile.
+            final double sigma = Math.log((double) p99Micros / medianMicros) / 2.326;
+            return new Latency() {
+                @Override
+                long sample(Draw draw) {
+                    // Box-Muller transform of two uniform draws.
+                    double gaussian = Math.sqrt(-2 * Math.log(1 - draw.next())) * Math.cos(2 * Math.PI * draw.next());
+                    return (long) Math.exp(mu + sigma * gaussian);
+                }
+            };
+        }
+
+        abstract long sample(Draw draw);
+    }
+
+    /**
+     * SplitMix64 stream of one call.
+     */
+    static final class Draw {
+        private long mState;
+
+        Draw(long state) {
+            mState = state;
+        }
+
+        long nextLong() {
+            long z = (mState += GOLDEN_GAMMA);
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+
+        /**
+         * @return a uniform value in [0, 1).
+         */
+        double next() {
+            return (nextLong() >>> 11) * 0x1.0p-53;
+        }
+    }
+
+    public static final class Builder {
+        private final ScheduledExecutorService mScheduler;
+        private long mSeed;
+        private Latency mReadinessLatency = Latency.NONE;
+        private Latency mPaymentLatency = Latency.NONE;
+        private boolean mReady = true;
+        private double mCancelRate;
+        private final List<Integer> mFailureStatuses = new ArrayList<>();
+        private final List<Double> mFailureRates = new ArrayList<>();
+
+        /**
+         * @param scheduler delivers every outcome after its latency.
+         */
+        public Builder(ScheduledExecutorService scheduler) {
+            mScheduler = scheduler;
+        }
+
+        public Builder setSeed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        public Builder setReadinessLatency(Latency latency) {
+            mReadinessLatency = latency;
+            return this;
+        }
+
+        /**
+         * Time the user spends on the payment sheet, plus the wallet's own processing.
+         */
+        public Builder setPaymentLatency(Latency latency) {
+            mPaymentLatency = latency;
+            return this;
+        }
+
+        /**
+         * @param ready the answer to isReadyToPay calls that do not fail.
+         */
+        public Builder setReady(boolean ready) {
+            mReady = ready;
+            return this;
+        }
+
+        /**
+         * Share of payment sheets the user dismisses, reported as {@link #STATUS_CANCELED}.
+         */
+        public Builder setCancelRate(double rate) {
+            mCancelRate = checkRate(rate);
+            return this;
+        }
+
+        /**
+         * Makes a share of the calls fail with {@code statusCode}, the status AutoResolveHelper
+         * would report. Shares of several statuses add up.
+         */
+        public Builder addFailure(int statusCode, double rate) {
+            if (statusCode == 0) throw new IllegalArgumentException("Status 0 is success");
+            double total = checkRate(rate);
+            for (double failureRate : mFailureRates) total += failureRate;
+            if (total > 1) throw new IllegalArgumentException("Failure rates add up to more than 1: " + total);
+            mFailureStatuses.add(statusCode);
+            mFailureRates.add(rate);
+            return this;
+        }
+
+        public SimulatedWalletClient build() {
+            return new SimulatedWalletClient(this);
+        }
+
+        private static double checkRate(double rate) {
+            if (rate < 0 || rate > 1) throw new IllegalArgumentException("Rate out of [0, 1]: " + rate);
+            return rate;
+        }
+    }
+}
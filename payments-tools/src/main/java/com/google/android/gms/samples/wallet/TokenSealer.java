@@ -0,0 +1,156 @@
+package com.google.android.gms.samples.wallet;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Google's side of the ECv2 protocol, for tests and benchmarks of {@link PaymentTokenVerifier}:
+ * seals messages into PaymentMethodTokens the way Google does for a DIRECT checkout, with locally
+ * generated root and intermediate signing keys.
+ */
+final class TokenSealer {
+    private static final String SENDER_ID = "Google";
+
+    private final KeyPair mIntermediate;
+    private final String mRecipientId;
+    private final String mSignedKey;
+    private final String mKeySignature;
+
+    /**
+     * @param root the root signing key that signs the intermediate key.
+     * @param recipientId the recipient the messages are signed for, {@code merchant:} followed by
+     *     the Google merchant ID.
+     * @param keyExpirationMillis when the intermediate key expires, in milliseconds since the epoch.
+     */
+    TokenSealer(KeyPair root, KeyPair intermediate, String recipientId, long keyExpirationMillis)
+            throws GeneralSecurityException {
+        mIntermediate = intermediate;
+        mRecipientId = recipientId;
+        mSignedKey = RequestWriter.obtain()
+                .beginObject()
+                .name("keyValue").value(base64(intermediate.getPublic().getEncoded()))
+                .name("keyExpiration").value(String.valueOf(keyExpirationMillis))
+                .endObject()
+                .toString();
+        mKeySignature = sign(root, PaymentTokenVerifier.signedBytes(SENDER_ID, PaymentTokenVerifier.PROTOCOL_VERSION, mSignedKey));
+    }
+
+    /**
+     * @return the PaymentMethodToken carrying {@code message} encrypted for {@code recipient}.
+     */
+    String seal(String message, ECPublicKey recipient) throws GeneralSecurityException {
+        return sign(encrypt(message, recipient));
+    }
+
+    /**
+     * @return the signedMessage JSON: {@code message} encrypted for {@code recipient}, with the
+     *     ephemeral public key and the tag.
+     */
+    String encrypt(String message, ECPublicKey recipient) throws GeneralSecurityException {
+        KeyPair ephemeral = generateKeyPair();
+        KeyAgreement agreement = KeyAgreement.getInstance("ECDH");
+        agreement.init(ephemeral.getPrivate());
+        agreement.doPhase(recipient, true);
+        byte[] shared = agreement.generateSecret();
+        byte[] point = uncompressed((ECPublicKey) ephemeral.getPublic());
+        byte[] ikm = new byte[point.length + shared.length];
+        System.arraycopy(point, 0, ikm, 0, point.length);
+        System.arraycopy(shared, 0, ikm, point.length, shared.length);
+        byte[] keys = hkdf(ikm);
+
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(keys, 0, 32, "AES"), new IvParameterSpec(new byte[16]));
+        byte[] encrypted = cipher.doFinal(message.getBytes(Catalog.UTF_8));
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(keys, 32, 32, "HmacSHA256"));
+        return RequestWriter.obtain()
+                .beginObject()
+                .name("encryptedMessage").value(base64(encrypted))
+                .name("ephemeralPublicKey").value(base64(point))
+                .name("tag").value(base64(mac.doFinal(encrypted)))
+                .endObject()
+                .toString();
+    }
+
+    /**
+     * @return the PaymentMethodToken carrying {@code signedMessage} as it is, signed by the
+     *     intermediate key.
+     */
+    String sign(String signedMessage) throws GeneralSecurityException {
+        String signature = sign(mIntermediate, PaymentTokenVerifier.signedBytes(
+                SENDER_ID, mRecipientId, PaymentTokenVerifier.PROTOCOL_VERSION, signedMessage));
+        return RequestWriter.obtain()
+                .beginObject()
+                .name("signature").value(signature)
+                .name("intermediateSigningKey").beginObject()
+                        .name("signedKey").value(mSignedKey)
+                        .name("signatures").beginArray().value(mKeySignature).endArray()
+                        .endObject()
+                .name("protocolVersion").value(PaymentTokenVerifier.PROTOCOL_VERSION)
+                .name("signedMessage").value(signedMessage)
+                .endObject()
+                .toString();
+    }
+
+    static KeyPair generateKeyPair() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+
+    static String base64(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * @return the 65-byte uncompressed encoding of {@code key}'s point.
+     */
+    static byte[] uncompressed(ECPublicKey key) {
+        byte[] point = new byte[65];
+        point[0] = 4;
+        copyUnsigned(key.getW().getAffineX().toByteArray(), point, 1);
+        copyUnsigned(key.getW().getAffineY().toByteArray(), point, 33);
+        return point;
+    }
+
+    private static String sign(KeyPair signer, byte[] data) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance("SHA256withECDSA");
+        signature.initSign(signer.getPrivate());
+        signature.update(data);
+        return base64(signature.sign());
+    }
+
+    private static byte[] hkdf(byte[] ikm) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(new byte[32], "HmacSHA256"));
+        mac.init(new SecretKeySpec(mac.doFinal(ikm), "HmacSHA256"));
+        byte[] info = SENDER_ID.getBytes(Catalog.UTF_8);
+        mac.update(info);
+        mac.update((byte) 1);
+        byte[] first = mac.doFinal();
+        mac.update(first);
+        mac.update(info);
+        mac.update((byte) 2);
+        byte[] second = mac.doFinal();
+        byte[] keys = new byte[64];
+        System.arraycopy(first, 0, keys, 0, 32);
+        System.arraycopy(second, 0, keys, 32, 32);
+        return keys;
+    }
+
+    private static void copyUnsigned(byte[] value, byte[] out, int offset) {
+        int length = Math.min(value.length, 32);
+        System.arraycopy(value, value.length - length, out, offset + 32 - length, length);
+    }
+}
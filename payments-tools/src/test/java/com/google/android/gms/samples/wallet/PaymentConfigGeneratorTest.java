@@ -0,0 +1,96 @@
+package com.google.android.gms.samples.wallet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * {@link PaymentConfigGenerator} output compiled with javac.
+ */
+public class PaymentConfigGeneratorTest {
+    private static final String PACKAGE = PaymentConfigGenerator.class.getPackage().getName();
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void keepsControlCharactersInLiterals() throws Exception {
+        // The 1 after the octal escape of U+0001 must not be read as part of it.
+        String merchantName = "Line\nReturn\rTab\tBack\bFeed\fStart\u00011 Delete\u007f \u00e9 \"quoted\" \\";
+        Properties properties = properties();
+        properties.setProperty("merchantName", merchantName);
+
+        Class<?> generated = compile(PaymentConfigGenerator.generate(properties, PACKAGE, "test.properties"));
+
+        assertEquals(merchantName, constant(generated, "MERCHANT_NAME"));
+        Object config = constant(generated, "CONFIG");
+        assertEquals(merchantName, config.getClass().getMethod("getMerchantName").invoke(config));
+    }
+
+    @Test
+    public void escapesControlCharactersWithoutUnicodeEscapes() {
+        assertEquals("\"a\\nb\\rc\\td\\be\\ff\\000g\\037h\\177\"",
+                PaymentConfigGenerator.literal("a\nb\rc\td\be\ff\u0000g\u001fh\u007f"));
+        assertEquals("\"\\u00e9\"", PaymentConfigGenerator.literal("\u00e9"));
+    }
+
+    private static Properties properties() {
+        Properties properties = new Properties();
+        properties.setProperty("cards", "VISA");
+        properties.setProperty("authMethods", "PAN_ONLY");
+        properties.setProperty("parameter.gateway", "example");
+        properties.setProperty("parameter.gatewayMerchantId", "exampleGatewayMerchantId");
+        return properties;
+    }
+
+    private Class<?> compile(String source) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("No system Java compiler, tests need a JDK", compiler);
+        File sources = mFolder.newFolder("src");
+        File classes = mFolder.newFolder("classes");
+        File file = new File(sources, PaymentConfigGenerator.CLASS_NAME + ".java");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), Catalog.UTF_8);
+        try {
+            out.write(source);
+        } finally {
+            out.close();
+        }
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int status = compiler.run(null, null, errors, "-encoding", "UTF-8", "-nowarn", "-d", classes.getPath(),
+                "-cp", System.getProperty("java.class.path"), file.getPath());
+        assertEquals("javac failed on\n" + source + errors.toString("UTF-8"), 0, status);
+        // The generated class uses package-private parts of PaymentConfig, so it is loaded along
+        // with its own copy of payments-core, in one runtime package.
+        List<URL> path = new ArrayList<>();
+        path.add(classes.toURI().toURL());
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            path.add(new File(entry).toURI().toURL());
+        }
+        ClassLoader loader = new URLClassLoader(path.toArray(new URL[0]), null);
+        return Class.forName(PACKAGE + "." + PaymentConfigGenerator.CLASS_NAME, true, loader);
+    }
+
+    private static Object constant(Class<?> type, String name) throws Exception {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(null);
+    }
+}
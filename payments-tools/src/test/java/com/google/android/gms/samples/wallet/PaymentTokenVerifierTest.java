@@ -0,0 +1,150 @@
+package com.google.android.gms.samples.wallet;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link PaymentTokenVerifier} against tokens sealed by {@link TokenSealer}.
+ */
+public class PaymentTokenVerifierTest {
+    private static final String RECIPIENT_ID = "merchant:12345678901234567890";
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private KeyPair mRoot;
+    private KeyPair mRecipient;
+    private long mNow;
+    private TokenSealer mSealer;
+
+    @Before
+    public void setUp() throws GeneralSecurityException {
+        mRoot = TokenSealer.generateKeyPair();
+        mRecipient = TokenSealer.generateKeyPair();
+        mNow = System.currentTimeMillis();
+        mSealer = new TokenSealer(mRoot, TokenSealer.generateKeyPair(), RECIPIENT_ID, mNow + DAY_MILLIS);
+    }
+
+    @Test
+    public void decryptsAValidToken() throws Exception {
+        String message = message(mNow + DAY_MILLIS);
+        assertEquals(message, verifier(mNow + DAY_MILLIS).decrypt(mSealer.seal(message, recipient())));
+    }
+
+    @Test
+    public void rejectsATamperedTag() throws Exception {
+        JSONObject signedMessage = new JSONObject(mSealer.encrypt(message(mNow + DAY_MILLIS), recipient()));
+        byte[] tag = Base64.getDecoder().decode(signedMessage.getString("tag"));
+        tag[0] ^= 1;
+        signedMessage.put("tag", TokenSealer.base64(tag));
+        // Signed again, so only the tag check can catch it.
+        assertRejected(verifier(mNow + DAY_MILLIS), mSealer.sign(signedMessage.toString()), "Cannot decrypt");
+    }
+
+    @Test
+    public void rejectsATokenForAnotherRecipient() throws Exception {
+        TokenSealer sealer = new TokenSealer(mRoot, TokenSealer.generateKeyPair(), "merchant:other", mNow + DAY_MILLIS);
+        assertRejected(verifier(mNow + DAY_MILLIS), sealer.seal(message(mNow + DAY_MILLIS), recipient()),
+                "Invalid message signature");
+    }
+
+    @Test
+    public void rejectsAnExpiredIntermediateKey() throws Exception {
+        TokenSealer sealer = new TokenSealer(mRoot, TokenSealer.generateKeyPair(), RECIPIENT_ID, mNow - 1);
+        assertRejected(verifier(mNow + DAY_MILLIS), sealer.seal(message(mNow + DAY_MILLIS), recipient()),
+                "Expired intermediate signing key");
+    }
+
+    @Test
+    public void rejectsAnExpiredRootKey() throws Exception {
+        assertRejected(verifier(mNow - 1), mSealer.seal(message(mNow + DAY_MILLIS), recipient()),
+                "not signed by a root key");
+    }
+
+    @Test
+    public void rejectsACachedIntermediateKeyOnceItsRootKeyExpires() throws Exception {
+        long rootExpiration = System.currentTimeMillis() + 300;
+        PaymentTokenVerifier verifier = verifier(rootExpiration);
+        String token = mSealer.seal(message(mNow + DAY_MILLIS), recipient());
+        verifier.decrypt(token);
+
+        Thread.sleep(rootExpiration - System.currentTimeMillis() + 50);
+        assertRejected(verifier, token, "Expired intermediate signing key");
+    }
+
+    @Test
+    public void rejectsAnEphemeralPointOffTheCurve() throws Exception {
+        JSONObject signedMessage = new JSONObject(mSealer.encrypt(message(mNow + DAY_MILLIS), recipient()));
+        byte[] point = Base64.getDecoder().decode(signedMessage.getString("ephemeralPublicKey"));
+        point[point.length - 1] ^= 1;
+        signedMessage.put("ephemeralPublicKey", TokenSealer.base64(point));
+        assertRejected(verifier(mNow + DAY_MILLIS), mSealer.sign(signedMessage.toString()), "not on the curve");
+    }
+
+    @Test
+    public void rejectsAnExpiredMessage() throws Exception {
+        assertRejected(verifier(mNow + DAY_MILLIS), mSealer.seal(message(mNow - 1), recipient()),
+                "Expired payment method token");
+    }
+
+    @Test
+    public void decryptsWithEitherRecipientKeyWhileRotating() throws Exception {
+        KeyPair rotated = TokenSealer.generateKeyPair();
+        PaymentTokenVerifier verifier = builder(mNow + DAY_MILLIS)
+                .addRecipientPrivateKey(TokenSealer.base64(rotated.getPrivate().getEncoded()))
+                .build();
+        String message = message(mNow + DAY_MILLIS);
+
+        assertEquals(message, verifier.decrypt(mSealer.seal(message, recipient())));
+        assertEquals(message, verifier.decrypt(mSealer.seal(message, (ECPublicKey) rotated.getPublic())));
+        ECPublicKey unknown = (ECPublicKey) TokenSealer.generateKeyPair().getPublic();
+        assertRejected(verifier, mSealer.seal(message, unknown), "Cannot decrypt");
+    }
+
+    private PaymentTokenVerifier verifier(long rootExpiration) throws GeneralSecurityException {
+        return builder(rootExpiration).build();
+    }
+
+    private PaymentTokenVerifier.Builder builder(long rootExpiration) throws GeneralSecurityException {
+        return new PaymentTokenVerifier.Builder()
+                .setRecipientId(RECIPIENT_ID)
+                .addRootSigningKey(TokenSealer.base64(mRoot.getPublic().getEncoded()), rootExpiration)
+                .addRecipientPrivateKey(TokenSealer.base64(mRecipient.getPrivate().getEncoded()));
+    }
+
+    private ECPublicKey recipient() {
+        return (ECPublicKey) mRecipient.getPublic();
+    }
+
+    private static String message(long expiration) throws JSONException {
+        return new JSONObject()
+                .put("messageExpiration", String.valueOf(expiration))
+                .put("messageId", "message-1")
+                .put("paymentMethod", "CARD")
+                .put("paymentMethodDetails", new JSONObject()
+                        .put("pan", "4111111111111111")
+                        .put("expirationMonth", 12)
+                        .put("expirationYear", 2030)
+                        .put("authMethod", "PAN_ONLY"))
+                .toString();
+    }
+
+    private static void assertRejected(PaymentTokenVerifier verifier, String token, String reason) {
+        try {
+            verifier.decrypt(token);
+            fail("Accepted a token that should fail with " + reason);
+        } catch (GeneralSecurityException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+}